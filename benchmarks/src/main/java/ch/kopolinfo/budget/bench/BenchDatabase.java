@@ -0,0 +1,68 @@
+package ch.kopolinfo.budget.bench;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import ch.kopolinfo.budget.db.AppDataContext;
+
+/**
+ * In-Memory-H2 aus dem eingecheckten Schema (db/schema.sql im App-Jar) mit Stammdaten
+ * für die Benchmarks: Währung CHF, die Accounts RAIFFEISEN_PRIVAT und CEMBRA, die Kategorie
+ * UNASSIGNED und categoryCount synthetische Kategorien (siehe SyntheticRules).
+ *
+ * Die Datenbank lebt, bis close() die offen gehaltene Verbindung schliesst.
+ */
+public final class BenchDatabase implements AutoCloseable {
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private final Connection keepAlive;
+    private final AppDataContext context;
+
+    private BenchDatabase(Connection keepAlive, AppDataContext context) {
+        this.keepAlive = keepAlive;
+        this.context = context;
+    }
+
+    public static BenchDatabase create(int categoryCount) throws Exception {
+        String url = "jdbc:h2:mem:bench" + COUNTER.incrementAndGet();
+        Connection keepAlive = DriverManager.getConnection(url);
+        try {
+            try (Statement statement = keepAlive.createStatement()) {
+                statement.execute("RUNSCRIPT FROM 'classpath:/db/schema.sql'");
+                statement.execute("INSERT INTO CURRENCY (CURRENCY_CODE, NAME) VALUES ('CHF', 'Schweizer Franken')");
+                statement.execute("INSERT INTO ACCOUNT (ID, NAME, CURRENCY_CODE) VALUES ('RAIFFEISEN_PRIVAT', 'Privatkonto', 'CHF'), ('CEMBRA', 'Kreditkarte', 'CHF')");
+                statement.execute("INSERT INTO CATEGORY_GROUP (ID, NAME) VALUES ('BENCH', 'Benchmark')");
+                statement.execute("INSERT INTO CATEGORY (ID, NAME, GROUP_ID) VALUES ('UNASSIGNED', 'Nicht zugeordnet', NULL)");
+            }
+            try (PreparedStatement insert = keepAlive.prepareStatement("INSERT INTO CATEGORY (ID, NAME, GROUP_ID) VALUES (?, ?, 'BENCH')")) {
+                for (int i = 0; i < categoryCount; i++) {
+                    insert.setString(1, SyntheticRules.category(i));
+                    insert.setString(2, "Kategorie " + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+
+            System.setProperty("budget.db.url", url);
+            return new BenchDatabase(keepAlive, new AppDataContext());
+        } catch (Exception e) {
+            keepAlive.close();
+            throw e;
+        }
+    }
+
+    public AppDataContext context() {
+        return context;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        context.close();
+        keepAlive.close();
+    }
+}
@@ -0,0 +1,112 @@
+package ch.kopolinfo.budget.bench;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.kopolinfo.budget.csvimport.CsvTokenizer;
+
+/**
+ * Vergleich: Zeilen-Parsing mit String.split/DateTimeFormatter (bisherige Importer)
+ * gegen den CsvTokenizer. Mit -prof gc laufen lassen, um die Allokationen zu sehen.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CsvParsingBenchmark {
+
+    private static final DateTimeFormatter RAIFFEISEN_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.S");
+    private static final DateTimeFormatter CEMBRA_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+
+    @Param({ "10000" })
+    public int lineCount;
+
+    private List<String> raiffeisenLines;
+    private List<String> cembraLines;
+
+    private final CsvTokenizer semicolonTokenizer = new CsvTokenizer(';');
+    private final CsvTokenizer commaTokenizer = new CsvTokenizer(',');
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        raiffeisenLines = new ArrayList<>(lineCount);
+        cembraLines = new ArrayList<>(lineCount);
+        LocalDate date = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < lineCount; i++) {
+            LocalDate day = date.plusDays(i / 20);
+            String amount = (random.nextBoolean() ? "-" : "") + random.nextInt(5000) + "." + (10 + random.nextInt(90));
+            raiffeisenLines.add(String.format("CH9300762011623852957;%s 00:00:00.0;Einkauf MIGROS KREUZPLATZ %d;%s;12345.60;%s 00:00:00.0",
+                    day, i, amount, day));
+            cembraLines.add(String.format("1234,%s,%s,MIGROS KREUZPLATZ,MIGROS KREUZPLATZ ZUERICH %d,%s,%s",
+                    day.format(CEMBRA_FORMATTER), day.format(CEMBRA_FORMATTER), i,
+                    random.nextBoolean() ? "Debit" : "Credit", amount.replace("-", "")));
+        }
+    }
+
+    @Benchmark
+    public void raiffeisenSplit(Blackhole bh) {
+        for (String line : raiffeisenLines) {
+            String[] columns = line.split(";");
+            bh.consume(LocalDateTime.parse(columns[1], RAIFFEISEN_FORMATTER).toLocalDate());
+            bh.consume(columns[2]);
+            bh.consume(new BigDecimal(columns[3]));
+        }
+    }
+
+    @Benchmark
+    public void raiffeisenTokenizer(Blackhole bh) {
+        for (String line : raiffeisenLines) {
+            CsvTokenizer tokenizer = semicolonTokenizer.reset(line);
+            bh.consume(tokenizer.parseIsoDate(1));
+            bh.consume(tokenizer.field(2));
+            bh.consume(tokenizer.parseDecimal(3));
+        }
+    }
+
+    @Benchmark
+    public void cembraSplit(Blackhole bh) {
+        for (String line : cembraLines) {
+            String[] columns = line.split(",");
+            bh.consume(LocalDate.parse(columns[2].trim(), CEMBRA_FORMATTER));
+            String merchant = columns[3].trim();
+            String detail = columns[4].trim();
+            bh.consume(detail.startsWith(merchant) ? merchant : merchant + " (" + detail + ")");
+            BigDecimal amount = new BigDecimal(columns[6].trim());
+            bh.consume("Debit".equalsIgnoreCase(columns[5].trim()) ? amount.negate() : amount);
+        }
+    }
+
+    @Benchmark
+    public void cembraTokenizer(Blackhole bh) {
+        for (String line : cembraLines) {
+            CsvTokenizer tokenizer = commaTokenizer.reset(line);
+            bh.consume(tokenizer.parseDayMonthYear(2));
+            String merchant = tokenizer.trimmedField(3);
+            bh.consume(tokenizer.trimmedFieldStartsWith(4, merchant) ? merchant : merchant + " (" + tokenizer.trimmedField(4) + ")");
+            BigDecimal amount = tokenizer.parseDecimal(6);
+            bh.consume(tokenizer.trimmedFieldEqualsIgnoreCase(5, "Debit") ? amount.negate() : amount);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ch.kopolinfo.budget.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.kopolinfo.budget.csvimport.CSVImporter;
+import ch.kopolinfo.budget.rules.RuleStore;
+
+/**
+ * CSVImporter.importFile gegen eine frische In-Memory-DB pro Iteration, Batch-Pfad
+ * gegen den Einzel-Insert-Pfad (batchSize 1). Gemessen wird ein ganzer Import.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImportBenchmark {
+
+    private static final int RULE_COUNT = 100;
+
+    @Param({ "5" })
+    public int fileSizeMb;
+
+    @Param({ "1", "1000" })
+    public int batchSize;
+
+    private Path rulesFile;
+    private Path exportFile;
+    private BenchDatabase database;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws Exception {
+        rulesFile = SyntheticRules.writeRulesFile(Files.createTempFile("rules-", ".csv"), SyntheticRules.definitions(RULE_COUNT, 42));
+        System.setProperty(RuleStore.RULES_FILE_PROPERTY, rulesFile.toString());
+
+        exportFile = Files.createTempFile("raiffeisen-", ".csv");
+        SyntheticExports.writeRaiffeisen(exportFile, fileSizeMb * 1024L * 1024L, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void createDatabase() throws Exception {
+        database = BenchDatabase.create(SyntheticRules.categoryCount(RULE_COUNT));
+    }
+
+    @Benchmark
+    public int importFile() throws Exception {
+        return new CSVImporter(database.context(), batchSize).importFile("RAIFFEISEN_PRIVAT", exportFile);
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeDatabase() throws Exception {
+        database.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws Exception {
+        Files.deleteIfExists(exportFile);
+        Files.deleteIfExists(rulesFile);
+    }
+}
@@ -0,0 +1,67 @@
+package ch.kopolinfo.budget.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.kopolinfo.budget.csvimport.CsvRow;
+import ch.kopolinfo.budget.csvimport.importer.CembraImporter;
+import ch.kopolinfo.budget.csvimport.importer.RaiffeisenImporter;
+
+/**
+ * parseFile der beiden Importer auf typischen Exportgrössen (einige MB).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImporterParseBenchmark {
+
+    @Param({ "1", "10" })
+    public int fileSizeMb;
+
+    private Path raiffeisenFile;
+    private Path cembraFile;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        raiffeisenFile = Files.createTempFile("raiffeisen-", ".csv");
+        cembraFile = Files.createTempFile("cembra-", ".csv");
+        SyntheticExports.writeRaiffeisen(raiffeisenFile, fileSizeMb * 1024L * 1024L, 42);
+        SyntheticExports.writeCembra(cembraFile, fileSizeMb * 1024L * 1024L, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(raiffeisenFile);
+        Files.deleteIfExists(cembraFile);
+    }
+
+    @Benchmark
+    public List<CsvRow> raiffeisenParseFile() throws Exception {
+        return new RaiffeisenImporter().parseFile(raiffeisenFile);
+    }
+
+    @Benchmark
+    public List<CsvRow> cembraParseFile() throws Exception {
+        return new CembraImporter().parseFile(cembraFile);
+    }
+}
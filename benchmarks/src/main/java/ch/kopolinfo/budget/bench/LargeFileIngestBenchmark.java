@@ -0,0 +1,134 @@
+package ch.kopolinfo.budget.bench;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.kopolinfo.budget.csvimport.CsvRow;
+import ch.kopolinfo.budget.csvimport.CsvTokenizer;
+import ch.kopolinfo.budget.csvimport.RowBatch;
+import ch.kopolinfo.budget.csvimport.importer.CembraImporter;
+import ch.kopolinfo.budget.csvimport.importer.RaiffeisenImporter;
+
+/**
+ * Ganze Datei einlesen: zeilenweise über Files.lines bzw. Files.readAllLines (bisher)
+ * gegen den gemappten Pfad der Importer. Durchsatz = fileSizeMb / Zeit pro Operation;
+ * mit -prof gc laufen lassen, um die Allokationen pro Datei zu vergleichen.
+ * parseParallelism setzt budget.parse.parallelism für die gemappten Pfade (1 = sequentiell).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+@State(Scope.Benchmark)
+public class LargeFileIngestBenchmark {
+
+    @Param({ "300" })
+    public int fileSizeMb;
+
+    @Param({ "1", "4" })
+    public int parseParallelism;
+
+    private Path raiffeisenFile;
+    private Path cembraFile;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws IOException {
+        System.setProperty("budget.parse.parallelism", Integer.toString(parseParallelism));
+        raiffeisenFile = Files.createTempFile("raiffeisen-", ".csv");
+        cembraFile = Files.createTempFile("cembra-", ".csv");
+        SyntheticExports.writeRaiffeisen(raiffeisenFile, fileSizeMb * 1024L * 1024L, 42);
+        SyntheticExports.writeCembra(cembraFile, fileSizeMb * 1024L * 1024L, 42);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws IOException {
+        Files.deleteIfExists(raiffeisenFile);
+        Files.deleteIfExists(cembraFile);
+    }
+
+    @Benchmark
+    public long raiffeisenFilesLines(Blackhole bh) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        try (Stream<String> lines = Files.lines(raiffeisenFile)) {
+            return lines.skip(1)
+                    .filter(line -> !line.isBlank())
+                    .map(line -> {
+                        tokenizer.reset(line);
+                        return new CsvRow(tokenizer.parseIsoDate(1), tokenizer.parseDecimal(3), tokenizer.field(2), line);
+                    })
+                    .peek(bh::consume)
+                    .count();
+        }
+    }
+
+    @Benchmark
+    public long raiffeisenMapped(Blackhole bh) throws Exception {
+        try (Stream<CsvRow> rows = new RaiffeisenImporter().streamFile(raiffeisenFile)) {
+            return rows.peek(bh::consume).count();
+        }
+    }
+
+    @Benchmark
+    public long raiffeisenMappedBatches(Blackhole bh) throws Exception {
+        try (Stream<RowBatch> batches = new RaiffeisenImporter().streamBatches(raiffeisenFile, 1000)) {
+            return batches.peek(bh::consume).mapToLong(RowBatch::size).sum();
+        }
+    }
+
+    @Benchmark
+    public long cembraReadAllLines(Blackhole bh) throws IOException {
+        CsvTokenizer tokenizer = new CsvTokenizer(',');
+        List<String> lines = Files.readAllLines(cembraFile);
+        List<String> body = lines.subList(1, lines.size());
+        Collections.reverse(body);
+        long count = 0;
+        for (String line : body) {
+            if (line.isBlank()) continue;
+            tokenizer.reset(line);
+            LocalDate bookingDate = tokenizer.parseDayMonthYear(2);
+            String merchant = tokenizer.trimmedField(3);
+            String description = tokenizer.trimmedFieldStartsWith(4, merchant) ? merchant : merchant + " (" + tokenizer.trimmedField(4) + ")";
+            BigDecimal amount = tokenizer.parseDecimal(6);
+            bh.consume(new CsvRow(bookingDate, tokenizer.trimmedFieldEqualsIgnoreCase(5, "Debit") ? amount.negate() : amount, description, line));
+            count++;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long cembraMapped(Blackhole bh) throws Exception {
+        try (Stream<CsvRow> rows = new CembraImporter().streamFile(cembraFile)) {
+            return rows.peek(bh::consume).count();
+        }
+    }
+
+    @Benchmark
+    public long cembraMappedBatches(Blackhole bh) throws Exception {
+        try (Stream<RowBatch> batches = new CembraImporter().streamBatches(cembraFile, 1000)) {
+            return batches.peek(bh::consume).mapToLong(RowBatch::size).sum();
+        }
+    }
+}
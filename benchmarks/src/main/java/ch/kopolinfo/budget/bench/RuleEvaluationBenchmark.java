@@ -0,0 +1,109 @@
+package ch.kopolinfo.budget.bench;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.kopolinfo.budget.csvimport.RowBatch;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+import ch.kopolinfo.budget.rules.PartnerMatch;
+import ch.kopolinfo.budget.rules.PredicateRule;
+import ch.kopolinfo.budget.rules.Rule;
+import ch.kopolinfo.budget.rules.RuleCompiler;
+import ch.kopolinfo.budget.rules.RuleDefinition;
+import ch.kopolinfo.budget.rules.RuleSequence;
+
+/**
+ * categoryFor bei wachsender Regelzahl: PartnerMatch (ein Automat für alle Teilstrings),
+ * RuleSequence aus einzelnen PredicateRules und das kompilierte Regelwerk aus dem RuleCompiler,
+ * letzteres auch über den RowBatch-Flyweight des Imports (Beträge in Rappen, ohne POJO).
+ * Ergebnis in ns pro Payment.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class RuleEvaluationBenchmark {
+
+    private static final int PAYMENTS = 10_000;
+
+    @Param({ "10", "100", "1000" })
+    public int ruleCount;
+
+    private List<Payment> payments;
+    private RowBatch rows;
+    private Rule partnerMatch;
+    private Rule ruleSequence;
+    private Rule compiled;
+
+    @Setup
+    public void setUp() {
+        payments = SyntheticRules.payments(PAYMENTS, 42);
+        rows = new RowBatch(PAYMENTS);
+        for (Payment payment : payments) {
+            rows.add(payment.getBookingDate(), RowBatch.toCents(payment.getAmount()), payment.getDescription(), payment.getRawCsvLine());
+        }
+        List<RuleDefinition> definitions = SyntheticRules.definitions(ruleCount, 42);
+
+        List<Map.Entry<String, String>> patterns = new ArrayList<>();
+        List<Rule> predicates = new ArrayList<>();
+        for (RuleDefinition definition : definitions) {
+            patterns.add(new AbstractMap.SimpleImmutableEntry<>(definition.contains(), definition.categoryId()));
+            predicates.add(new PredicateRule(definition));
+        }
+        partnerMatch = new PartnerMatch(patterns);
+        ruleSequence = new RuleSequence(predicates);
+        compiled = RuleCompiler.compile(definitions);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYMENTS)
+    public void partnerMatch(Blackhole bh) {
+        for (Payment payment : payments) {
+            bh.consume(partnerMatch.categoryFor(payment));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYMENTS)
+    public void ruleSequence(Blackhole bh) {
+        for (Payment payment : payments) {
+            bh.consume(ruleSequence.categoryFor(payment));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYMENTS)
+    public void compiledRuleSet(Blackhole bh) {
+        for (Payment payment : payments) {
+            bh.consume(compiled.categoryFor(payment));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAYMENTS)
+    public void compiledRuleSetOnRowBatch(Blackhole bh) {
+        RowBatch.Row row = rows.row(payments.get(0).getAccountId());
+        for (int i = 0; i < rows.size(); i++) {
+            bh.consume(compiled.categoryFor(row.at(i)));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ch.kopolinfo.budget.bench;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.kopolinfo.budget.csvimport.CSVImporter;
+import ch.kopolinfo.budget.rules.RuleStore;
+import ch.kopolinfo.budget.rules.RulesApplier;
+
+/**
+ * RulesApplier.applyRules auf einer frisch importierten In-Memory-DB: importiert wird ohne
+ * Regeln (alles UNASSIGNED), danach wird das synthetische Regelwerk aktiv und gemessen.
+ * chunkSize 1 ist der bisherige Einzel-Update-Pfad.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RulesApplierBenchmark {
+
+    @Param({ "5" })
+    public int fileSizeMb;
+
+    @Param({ "100" })
+    public int ruleCount;
+
+    @Param({ "1", "1000" })
+    public int chunkSize;
+
+    private Path rulesFile;
+    private Path exportFile;
+    private BenchDatabase database;
+
+    @Setup(Level.Trial)
+    public void writeFiles() throws Exception {
+        rulesFile = Files.createTempFile("rules-", ".csv");
+        System.setProperty(RuleStore.RULES_FILE_PROPERTY, rulesFile.toString());
+
+        exportFile = Files.createTempFile("raiffeisen-", ".csv");
+        SyntheticExports.writeRaiffeisen(exportFile, fileSizeMb * 1024L * 1024L, 42);
+    }
+
+    @Setup(Level.Iteration)
+    public void importUnassigned() throws Exception {
+        // Leeres Regelwerk für den Import, der RuleStore lädt die Datei bei Änderung neu
+        Files.write(rulesFile, List.of("# leer"));
+        database = BenchDatabase.create(SyntheticRules.categoryCount(ruleCount));
+        new CSVImporter(database.context()).importFile("RAIFFEISEN_PRIVAT", exportFile);
+        SyntheticRules.writeRulesFile(rulesFile, SyntheticRules.definitions(ruleCount, 42));
+    }
+
+    @Benchmark
+    public int applyRules() {
+        return new RulesApplier(database.context(), chunkSize).applyRules();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeDatabase() throws Exception {
+        database.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteFiles() throws Exception {
+        Files.deleteIfExists(exportFile);
+        Files.deleteIfExists(rulesFile);
+    }
+}
@@ -0,0 +1,73 @@
+package ch.kopolinfo.budget.bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+/**
+ * Schreibt synthetische Bank-Exporte im Raiffeisen- bzw. Cembra-Format. Mit festem Seed,
+ * damit Läufe vergleichbar bleiben; ein kleiner Teil der Zeilen enthält Umlaute.
+ */
+public final class SyntheticExports {
+
+    private static final DateTimeFormatter CEMBRA_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
+    static final String[] MERCHANTS = {
+            "MIGROS KREUZPLATZ", "COOP BERN", "SBB CFF FFS", "Bäckerei Zürcher", "TWINT *Online", "DIGITEC GALAXUS",
+            "Swisscom", "Café Flüh", "VBZ ZUERICH", "APOTHEKE AM BAHNHOF"
+    };
+
+    private SyntheticExports() {}
+
+    /**
+     * Raiffeisen-Export mit Header, aufsteigend sortiert, bis mindestens targetBytes erreicht sind.
+     * @return Anzahl Datenzeilen
+     */
+    public static int writeRaiffeisen(Path file, long targetBytes, long seed) throws IOException {
+        Random random = new Random(seed);
+        int lines = 0;
+        long bytes = 0;
+        LocalDate start = LocalDate.of(2000, 1, 1);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("IBAN;Booked At;Text;Credit/Debit Amount;Balance;Valuta Date\n");
+            while (bytes < targetBytes) {
+                LocalDate day = start.plusDays(lines / 20);
+                String line = String.format("CH9300762011623852957;%s 00:00:00.0;Einkauf %s %d;%s;12345.60;%s 00:00:00.0%n",
+                        day, MERCHANTS[random.nextInt(MERCHANTS.length)], lines, amount(random), day);
+                writer.write(line);
+                bytes += line.length();
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Cembra-Export mit Header, wie bei Cembra absteigend sortiert.
+     * @return Anzahl Datenzeilen
+     */
+    public static int writeCembra(Path file, long targetBytes, long seed) throws IOException {
+        Random random = new Random(seed);
+        int lines = (int) Math.max(1, targetBytes / 90);
+        LocalDate start = LocalDate.of(2000, 1, 1);
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("Card number,Transaction date,Booking date,Merchant,Description,Type,Amount\n");
+            for (int i = lines - 1; i >= 0; i--) {
+                String day = start.plusDays(i / 20).format(CEMBRA_FORMATTER);
+                String merchant = MERCHANTS[random.nextInt(MERCHANTS.length)];
+                String amount = amount(random);
+                writer.write(String.format("1234,%s,%s,%s,%s %d,%s,%s%n", day, day, merchant, merchant, i,
+                        amount.startsWith("-") ? "Debit" : "Credit", amount.replace("-", "")));
+            }
+        }
+        return lines;
+    }
+
+    static String amount(Random random) {
+        return (random.nextInt(10) < 8 ? "-" : "") + random.nextInt(5000) + "." + (10 + random.nextInt(90));
+    }
+}
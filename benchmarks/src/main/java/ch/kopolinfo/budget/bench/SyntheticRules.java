@@ -0,0 +1,74 @@
+package ch.kopolinfo.budget.bench;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+import ch.kopolinfo.budget.rules.RuleCompiler;
+import ch.kopolinfo.budget.rules.RuleDefinition;
+
+/**
+ * Synthetische Regelwerke und Payments. Die ersten Regeln treffen die Händler aus
+ * SyntheticExports, alle weiteren nie; mit wachsender Regelzahl wird so vor allem
+ * der Aufwand für nicht passende Regeln gemessen.
+ */
+public final class SyntheticRules {
+
+    private SyntheticRules() {}
+
+    public static String category(int index) {
+        return String.format("CAT%04d", index);
+    }
+
+    /**
+     * count reine Teilstring-Regeln, ein Zehntel davon zusätzlich mit Betragsgrenze.
+     */
+    public static List<RuleDefinition> definitions(int count, long seed) {
+        Random random = new Random(seed);
+        List<RuleDefinition> definitions = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String pattern = i < SyntheticExports.MERCHANTS.length / 2
+                    ? SyntheticExports.MERCHANTS[i]
+                    : "HAENDLER " + Integer.toString(random.nextInt(1_000_000), 36).toUpperCase();
+            BigDecimal amountMax = i % 10 == 9 ? BigDecimal.valueOf(-random.nextInt(100)) : null;
+            definitions.add(new RuleDefinition(10, category(i % categoryCount(count)), pattern, null, null, null, amountMax));
+        }
+        return definitions;
+    }
+
+    /**
+     * Anzahl verschiedener Kategorien, die definitions(count, ...) verwendet.
+     */
+    public static int categoryCount(int ruleCount) {
+        return Math.max(1, Math.min(ruleCount, 50));
+    }
+
+    /**
+     * Schreibt das Regelwerk im Format der Regel-Datei.
+     */
+    public static Path writeRulesFile(Path file, List<RuleDefinition> definitions) throws Exception {
+        Files.write(file, RuleCompiler.format(definitions));
+        return file;
+    }
+
+    public static List<Payment> payments(int count, long seed) {
+        Random random = new Random(seed);
+        List<Payment> payments = new ArrayList<>(count);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        for (int i = 0; i < count; i++) {
+            Payment payment = new Payment();
+            payment.setPaymentId(i);
+            payment.setAccountId("RAIFFEISEN_PRIVAT");
+            payment.setBookingDate(start.plusDays(i / 20));
+            payment.setAmount(new BigDecimal(SyntheticExports.amount(random)));
+            payment.setDescription("Einkauf " + SyntheticExports.MERCHANTS[random.nextInt(SyntheticExports.MERCHANTS.length)] + " " + i);
+            payments.add(payment);
+        }
+        return payments;
+    }
+}
@@ -0,0 +1,74 @@
+package ch.kopolinfo.budget.bench;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+import ch.kopolinfo.budget.rules.MultiPatternMatcher;
+import ch.kopolinfo.budget.rules.RuleDefinition;
+
+/**
+ * Der Aho-Corasick-Automat (MultiPatternMatcher) muss dasselbe liefern wie die frühere Schleife
+ * über die Muster mit String.contains: firstMatch das erste enthaltene Muster in Listenreihenfolge,
+ * allMatches alle enthaltenen.
+ */
+class MultiPatternMatcherEquivalenceTest {
+
+    @Test
+    void syntheticRulesMatchContainsLoop() {
+        List<String> patterns = SyntheticRules.definitions(500, 42).stream().map(RuleDefinition::contains).toList();
+        List<String> texts = new ArrayList<>();
+        for (Payment payment : SyntheticRules.payments(5_000, 7)) {
+            texts.add(payment.getDescription());
+        }
+        assertMatchesContainsLoop(patterns, texts);
+    }
+
+    @Test
+    void overlappingPatternsMatchContainsLoop() {
+        // Präfixe, Suffixe, Teilstrings voneinander, Duplikate und Umlaute; die späteren, längeren
+        // Muster dürfen die früheren, kürzeren nicht verdrängen und umgekehrt
+        List<String> patterns = List.of(
+                "KREUZPLATZ", "MIGROS KREUZPLATZ", "MIGROS", "GROS", "OS K", "MIGROS", "Zürcher", "ürc",
+                "SBB", "SBB CFF FFS", "FFS", "F", "Café", "é F", "AAB", "AB", "ABAB", "BABA");
+        Random random = new Random(3);
+        List<String> texts = new ArrayList<>(List.of("", "F", "MIGROS KREUZPLATZ", "Bäckerei Zürcher", "ABABABA", "Café Flüh"));
+        for (int i = 0; i < 5_000; i++) {
+            // Texte aus Bruchstücken der Muster, damit Teiltreffer und Failure-Links vorkommen
+            StringBuilder text = new StringBuilder();
+            int parts = random.nextInt(5);
+            for (int p = 0; p < parts; p++) {
+                String pattern = patterns.get(random.nextInt(patterns.size()));
+                int from = random.nextInt(pattern.length());
+                text.append(pattern, from, from + 1 + random.nextInt(pattern.length() - from));
+                if (random.nextBoolean()) text.append(' ');
+            }
+            texts.add(text.toString());
+        }
+        assertMatchesContainsLoop(patterns, texts);
+    }
+
+    private static void assertMatchesContainsLoop(List<String> patterns, List<String> texts) {
+        MultiPatternMatcher matcher = new MultiPatternMatcher(patterns);
+        for (String text : texts) {
+            assertEquals(firstContained(patterns, text), matcher.firstMatch(text), text);
+            int[] all = IntStream.range(0, patterns.size()).filter(i -> text.contains(patterns.get(i))).toArray();
+            assertArrayEquals(all, matcher.allMatches(text), text);
+        }
+    }
+
+    // Referenz: die sequentielle Schleife, wie PartnerMatch sie vor dem Automaten hatte
+    private static int firstContained(List<String> patterns, String text) {
+        for (int i = 0; i < patterns.size(); i++) {
+            if (text.contains(patterns.get(i))) return i;
+        }
+        return -1;
+    }
+}
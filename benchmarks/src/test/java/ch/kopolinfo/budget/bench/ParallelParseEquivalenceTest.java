@@ -0,0 +1,119 @@
+package ch.kopolinfo.budget.bench;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import ch.kopolinfo.budget.csvimport.FileImporter;
+import ch.kopolinfo.budget.csvimport.RowBatch;
+import ch.kopolinfo.budget.csvimport.importer.CembraImporter;
+import ch.kopolinfo.budget.csvimport.importer.RaiffeisenImporter;
+
+/**
+ * Paralleles Parsen (ChunkedCsvParser) muss dieselben Batches liefern wie sequentielles. Die
+ * Referenz ist ein einziger Bereich (budget.parse.chunkBytes = Integer.MAX_VALUE); verglichen
+ * wird mit Bereichsgrössen, bei denen jede bzw. viele Zeilengrenzen auf Bereichsgrenzen fallen.
+ * Die Dateien mischen \n, \r\n und \r, enthalten Leerzeilen und enden ohne Zeilenumbruch.
+ */
+class ParallelParseEquivalenceTest {
+    private static final String CHUNK_BYTES = "budget.parse.chunkBytes";
+    // 1 macht jede Zeile zu einem eigenen Bereich, die übrigen treffen Zeilenenden mal genau, mal nicht
+    private static final int[] CHUNK_SIZES = {1, 2, 89, 90, 91, 4093, 65536};
+    private static final int BATCH_SIZE = 1000;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void requireParallelPool() {
+        assertTrue(Integer.getInteger("budget.parse.parallelism", 1) > 1,
+                "Ohne budget.parse.parallelism > 1 würde nur der sequentielle Pfad geprüft");
+    }
+
+    @AfterEach
+    void resetChunkBytes() {
+        System.clearProperty(CHUNK_BYTES);
+    }
+
+    @Test
+    void raiffeisenMatchesSequential() throws Exception {
+        Path generated = directory.resolve("raiffeisen-generated.csv");
+        SyntheticExports.writeRaiffeisen(generated, 300_000, 1);
+        // Zeilen ohne Betrag prüfen zusätzlich das Überspringen über Bereichsgrenzen hinweg
+        assertMatchesSequential(new RaiffeisenImporter(), irregular(generated, directory.resolve("raiffeisen.csv"), true));
+    }
+
+    @Test
+    void cembraMatchesSequential() throws Exception {
+        Path generated = directory.resolve("cembra-generated.csv");
+        SyntheticExports.writeCembra(generated, 300_000, 2);
+        assertMatchesSequential(new CembraImporter(), irregular(generated, directory.resolve("cembra.csv"), false));
+    }
+
+    private static void assertMatchesSequential(FileImporter importer, Path file) throws Exception {
+        System.setProperty(CHUNK_BYTES, Integer.toString(Integer.MAX_VALUE));
+        Parsed reference = parse(importer, file);
+        assertFalse(reference.rows().isEmpty());
+
+        for (int chunkBytes : CHUNK_SIZES) {
+            System.setProperty(CHUNK_BYTES, Integer.toString(chunkBytes));
+            Parsed parallel = parse(importer, file);
+            assertEquals(reference.batchSizes(), parallel.batchSizes(), "Batch-Grössen bei chunkBytes=" + chunkBytes);
+            assertEquals(reference.rows(), parallel.rows(), "Zeilen bei chunkBytes=" + chunkBytes);
+        }
+    }
+
+    private record Parsed(List<Integer> batchSizes, List<String> rows) {}
+
+    private static Parsed parse(FileImporter importer, Path file) throws Exception {
+        List<Integer> batchSizes = new ArrayList<>();
+        List<String> rows = new ArrayList<>();
+        try (Stream<RowBatch> batches = importer.streamBatches(file, BATCH_SIZE)) {
+            batches.forEach(batch -> {
+                batchSizes.add(batch.size());
+                for (int i = 0; i < batch.size(); i++) {
+                    rows.add(batch.epochDay(i) + "|" + batch.amountCents(i) + "|" + batch.description(i) + "|" + batch.rawLine(i));
+                }
+            });
+        }
+        return new Parsed(batchSizes, rows);
+    }
+
+    /**
+     * Schreibt die Datei mit wechselnden Zeilenenden und Leerzeilen neu. Mit clearAmounts wird
+     * zudem in jeder 13. Zeile der Raiffeisen-Betrag (viertes Feld) geleert.
+     */
+    private static Path irregular(Path source, Path target, boolean clearAmounts) throws Exception {
+        List<String> lines = Files.readAllLines(source, StandardCharsets.UTF_8);
+        try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+            writer.write(lines.get(0));
+            writer.write('\n');
+            for (int i = 1; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (clearAmounts && i % 13 == 0) {
+                    String[] fields = line.split(";", -1);
+                    fields[3] = "";
+                    line = String.join(";", fields);
+                }
+                writer.write(line);
+                if (i == lines.size() - 1) break;
+                writer.write(i % 3 == 0 ? "\r\n" : i % 11 == 0 ? "\r" : "\n");
+                if (i % 7 == 0) writer.write(i % 2 == 0 ? "\n" : "\r\n");
+            }
+        }
+        return target;
+    }
+}
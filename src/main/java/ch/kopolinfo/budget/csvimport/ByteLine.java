@@ -0,0 +1,59 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Zeile einer gemappten Datei, die nur aus ASCII-Bytes besteht. Sie wird ohne Dekodierung
+ * als CharSequence direkt über den Bytes gelesen; ein String entsteht erst bei toString(),
+ * für Teilbereiche (z.B. ein Feld des CsvTokenizers) nur aus den Bytes dieses Bereichs.
+ *
+ * Gültig, solange die zugrunde liegende Datei offen ist.
+ */
+public final class ByteLine implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+    private String text;
+
+    ByteLine(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (char) buffer.get(offset + index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("[" + start + ", " + end + ") ausserhalb von " + length);
+        }
+        return text != null ? text.substring(start, end) : new ByteLine(buffer, offset + start, end - start);
+    }
+
+    /**
+     * Kopiert die Bytes ohne Dekodierung; ASCII entspricht 1:1 Latin-1, der String bleibt kompakt.
+     */
+    @Override
+    public String toString() {
+        if (text == null) {
+            byte[] bytes = new byte[length];
+            buffer.get(offset, bytes);
+            text = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        return text;
+    }
+}
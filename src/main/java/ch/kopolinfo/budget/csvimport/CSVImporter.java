@@ -9,31 +9,71 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
 
 import org.jooq.DSLContext;
 import org.jooq.impl.DSL;
 
 import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.db.DescriptionIndex;
+import ch.kopolinfo.budget.db.ImportStaging;
+import ch.kopolinfo.budget.db.MonthlyAggregate;
+import ch.kopolinfo.budget.db.PaymentHashIndex;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.metrics.PipelineMetrics.Stage;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
 import ch.kopolinfo.budget.model.jooq.tables.records.ImportEntryRecord;
 import ch.kopolinfo.budget.model.jooq.tables.records.ImportLogRecord;
 import ch.kopolinfo.budget.model.jooq.tables.records.PaymentRecord;
 import ch.kopolinfo.budget.model.jooq.tables.records.TransactionRecord;
+import ch.kopolinfo.budget.rules.ParallelClassifier;
+import ch.kopolinfo.budget.rules.ProfilingRule;
 import ch.kopolinfo.budget.rules.Rule;
 import ch.kopolinfo.budget.rules.RuleFactory;
 
 public class CSVImporter {
+    // Anzahl Zeilen pro Multi-Row-Insert; <= 1 schaltet auf den Einzel-Insert-Pfad zurück
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // Zeilen eines Chunks mit ihren Fingerabdrücken (siehe RowFingerprinter)
+    private record Chunk(RowBatch rows, List<Long> hashes) {}
+
     private final AppDataContext context;
+    private final int batchSize;
+    private final boolean dedupe;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
 
     public CSVImporter(AppDataContext context) {
+    	this(context, DEFAULT_BATCH_SIZE);
+    }
+
+    public CSVImporter(AppDataContext context, int batchSize) {
+    	this(context, batchSize, false);
+    }
+
+    /**
+     * @param dedupe überlappende Exporte zulassen: statt der Watermark-Prüfung werden Zeilen,
+     *               deren Fingerabdruck für den Account schon erfasst ist, übersprungen
+     */
+    public CSVImporter(AppDataContext context, int batchSize, boolean dedupe) {
     	this.context = context;
+    	this.batchSize = batchSize;
+    	this.dedupe = dedupe;
     }
 
     /**
      * Führt den Import-Prozess für eine Datei und einen Account aus.
      */
-    private void processImport(String accountId, String filePathStr) {
+    private void processImport(String accountId, String filePathStr, boolean staged) {
         try {
             System.out.println("Starte Import für Account: " + accountId);
             
@@ -42,30 +82,51 @@ public class CSVImporter {
                 throw new IllegalArgumentException("Datei nicht gefunden: " + filePathStr);
             }
 
-            FileImporter fileImporter = context.getImporter(accountId);
-            
-            System.out.println("Parse Datei: " + path.getFileName() + " mit " + fileImporter.getClass().getSimpleName());
-            List<CsvRow> rows = fileImporter.parseFile(path);
-
-            validateImportDate(accountId, rows);
-            
-            importPayments(path.getFileName().toString(), accountId, rows);
+            int rowCount = staged ? importFileStaged(accountId, path) : importFile(accountId, path);
+            System.out.println(rowCount + " Einträge erfolgreich verarbeitet.");
         } catch (Exception e) {
             System.err.println("Fehler während des Import-Vorgangs:");
             e.printStackTrace();
         }
     }
 
-    private void validateImportDate(String accountId, List<CsvRow> rows) {
-        if (rows.isEmpty()) return;
+    /**
+     * Importiert eine Datei in einer atomaren Transaktion.
+     * @return Anzahl importierter Zeilen
+     */
+    public int importFile(String accountId, Path path) throws Exception {
+        long start = System.nanoTime();
+        FileImporter fileImporter = context.getImporter(accountId);
 
-        // 1. Datum der ersten Buchung in der CSV (Annahme: sortiert)
-        LocalDate firstCsvDate = rows.get(0).bookingDate();
+        System.out.println("Parse Datei: " + path.getFileName() + " mit " + fileImporter.getClass().getSimpleName());
+        try (Stream<RowBatch> batches = fileImporter.streamBatches(path, Math.max(batchSize, 1))) {
+            // Nur der erste Chunk wird vor der Transaktion gelesen, der Rest fliesst direkt in die DB
+            Iterator<RowBatch> remaining = batches.iterator();
+            RowBatch firstChunk = nextChunk(remaining, true);
 
-        // 2. Letztes Buchungsdatum in der DB für dieses Konto
-        LocalDate lastDbDate = context.getLastBookingDate(accountId);
+            validateImportDate(context.getDsl(), accountId, firstChunk.isEmpty() ? null : firstChunk.bookingDate(0));
 
-        // 3. Fail-Fast Check
+            int rowCount = importPayments(path.getFileName().toString(), accountId, firstChunk, remaining);
+            metrics.recordImport(System.nanoTime() - start, rowCount);
+            return rowCount;
+        }
+    }
+
+    /**
+     * Watermark-Prüfung; dsl bestimmt, welche (ggf. noch nicht committeten) Daten sichtbar sind.
+     * Im Dedupe-Modus entfällt sie, Überschneidungen werden dort zeilenweise erkannt.
+     * @param firstCsvDate Datum der ersten Buchung in der CSV (Annahme: sortiert), null bei leerer Datei
+     */
+    void validateImportDate(DSLContext dsl, String accountId, LocalDate firstCsvDate) {
+        if (dedupe || firstCsvDate == null) return;
+        long start = System.nanoTime();
+
+        // Letztes Buchungsdatum in der DB für dieses Konto
+        LocalDate lastDbDate = context.getLastBookingDate(dsl, accountId);
+
+        metrics.record(Stage.VALIDATE, System.nanoTime() - start, 0);
+
+        // Fail-Fast Check
         if (lastDbDate != null && !firstCsvDate.isAfter(lastDbDate)) {
             throw new IllegalStateException(
                 String.format("Import abgebrochen: Erste Buchung am %s überschneidet sich mit bestehenden Daten (Letzte Buchung: %s).", 
@@ -74,63 +135,331 @@ public class CSVImporter {
         }
     }
     
-    private void importPayments(String fileName, String accountId, List<CsvRow> csvRows) {
+    /**
+     * Fingerabdrücke für den Chunk bilden und im Dedupe-Modus bereits importierte Zeilen entfernen.
+     * Pro Chunk wird nur nach dessen eigenen Hashes bzw. Buchungstagen gesucht, unabhängig von der
+     * Grösse der Historie.
+     */
+    private Chunk fingerprint(DSLContext txDsl, String accountId, RowBatch rows, RowFingerprinter fingerprinter) {
+        long start = System.nanoTime();
+        if (!dedupe) {
+            // Alle Zeilen sind neu: Vorkommensnummern nach den bestehenden gleichen Zeilen vergeben
+            PaymentHashIndex.countExisting(txDsl, accountId, fingerprinter.uncountedDays(rows), fingerprinter);
+        }
+        List<Long> hashes = fingerprinter.fingerprints(rows);
+        Chunk chunk = dedupe ? withoutExisting(txDsl, accountId, rows, hashes) : new Chunk(rows, hashes);
+        metrics.record(Stage.VALIDATE, System.nanoTime() - start, rows.size());
+        return chunk;
+    }
+
+    private Chunk withoutExisting(DSLContext txDsl, String accountId, RowBatch rows, List<Long> hashes) {
+        Set<Long> existing = PaymentHashIndex.existing(txDsl, accountId, hashes);
+        if (existing.isEmpty()) {
+            return new Chunk(rows, hashes);
+        }
+        BitSet keep = new BitSet(rows.size());
+        List<Long> newHashes = new ArrayList<>(rows.size() - existing.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (!existing.contains(hashes.get(i))) {
+                keep.set(i);
+                newHashes.add(hashes.get(i));
+            }
+        }
+        return new Chunk(rows.select(keep), newHashes);
+    }
+
+    /**
+     * Holt den nächsten Batch; ein leerer Batch markiert das Ende.
+     * @param parsing die Batches kommen aus einem lazy geparsten Stream, die Zeit zählt als PARSE
+     */
+    private RowBatch nextChunk(Iterator<RowBatch> batches, boolean parsing) {
+        long start = System.nanoTime();
+        RowBatch chunk = batches.hasNext() ? batches.next() : new RowBatch(0);
+        if (parsing) {
+            metrics.record(Stage.PARSE, System.nanoTime() - start, chunk.size());
+        }
+        return chunk;
+    }
+
+    /**
+     * Zweiphasiger Import für grosse Dateien: Parsen, Fingerabdrücke und Klassifizierung laufen
+     * ohne offene Transaktion, die Zeilen landen in IMPORT_STAGING (Autocommit pro Chunk). Erst
+     * das Publizieren läuft in einer kurzen Transaktion mit einem INSERT ... SELECT pro Tabelle;
+     * Sperren auf PAYMENT und TRANSACTION halten damit unabhängig von der Dateigrösse nur kurz.
+     * Das Ergebnis entspricht importFile.
+     * @return Anzahl importierter Zeilen
+     */
+    public int importFileStaged(String accountId, Path path) throws Exception {
+        long start = System.nanoTime();
+        FileImporter fileImporter = context.getImporter(accountId);
+        DSLContext dsl = context.getDsl();
+        long stageId = ThreadLocalRandom.current().nextLong();
+
+        System.out.println("Parse Datei: " + path.getFileName() + " mit " + fileImporter.getClass().getSimpleName() + " (gestaffelt)");
+        try (Stream<RowBatch> batches = fileImporter.streamBatches(path, Math.max(batchSize, 1));
+                ParallelClassifier classifier = new ParallelClassifier(RuleFactory.getRuleSet())) {
+            Iterator<RowBatch> remaining = batches.iterator();
+            RowBatch firstChunk = nextChunk(remaining, true);
+            LocalDate firstCsvDate = firstChunk.isEmpty() ? null : firstChunk.bookingDate(0);
+            validateImportDate(dsl, accountId, firstCsvDate);
+
+            // Phase 1: ablegen, während der nächste Chunk klassifiziert wird
+            RowFingerprinter fingerprinter = new RowFingerprinter();
+            int staged = 0;
+            int skipped = 0;
+            Chunk previous = null;
+            CompletableFuture<List<Optional<String>>> previousCategories = null;
+            for (RowBatch rows = firstChunk; !rows.isEmpty(); rows = nextChunk(remaining, true)) {
+                Chunk chunk = fingerprint(dsl, accountId, rows, fingerprinter);
+                skipped += rows.size() - chunk.rows().size();
+                CompletableFuture<List<Optional<String>>> categories = classifier.classifyAsync(chunk.rows(), accountId);
+                if (previous != null) {
+                    staged += stage(dsl, stageId, staged, previous, previousCategories.join());
+                }
+                previous = chunk;
+                previousCategories = categories;
+            }
+            if (previous != null) {
+                staged += stage(dsl, stageId, staged, previous, previousCategories.join());
+            }
+
+            // Phase 2: kurze Transaktion, Watermark erneut prüfen, da inzwischen ein anderer Import gelaufen sein kann
+            String unassignedId = context.getUnassignedCategory().getId();
+            ImportStaging.Published published = dsl.transactionResult(configuration -> {
+                DSLContext txDsl = DSL.using(configuration);
+                validateImportDate(txDsl, accountId, firstCsvDate);
+
+                long publishStart = System.nanoTime();
+                ImportLogRecord importLog = txDsl.newRecord(IMPORT_LOG);
+                importLog.setAccountId(accountId);
+                importLog.setImportDate(LocalDateTime.now());
+                importLog.setFileName(path.getFileName().toString());
+                importLog.insert();
+                ImportStaging.Published result = ImportStaging.publish(txDsl, stageId, accountId, importLog.getImportId(), unassignedId, dedupe);
+                metrics.record(Stage.INSERT, System.nanoTime() - publishStart, result.rows());
+                return result;
+            });
+
+            skipped += published.skipped();
+            if (skipped > 0) {
+                System.out.println(skipped + " bereits importierte Zeilen aus " + path.getFileName() + " übersprungen.");
+            }
+            metrics.recordImport(System.nanoTime() - start, published.rows());
+            return published.rows();
+        } finally {
+            ImportStaging.clear(dsl, stageId);
+        }
+    }
+
+    private int stage(DSLContext dsl, long stageId, int firstRowNo, Chunk chunk, List<Optional<String>> categories) {
+        long start = System.nanoTime();
+        ImportStaging.stage(dsl, stageId, firstRowNo, chunk.rows(), chunk.hashes(), categories);
+        metrics.record(Stage.INSERT, System.nanoTime() - start, chunk.rows().size());
+        return chunk.rows().size();
+    }
+
+    private int importPayments(String fileName, String accountId, RowBatch firstChunk, Iterator<RowBatch> remaining) {
+        // Alles in einer atomaren Transaktion
+        return context.getDsl().transactionResult(configuration ->
+                importRows(DSL.using(configuration), fileName, accountId, firstChunk, remaining, true));
+    }
+
+    /**
+     * Importiert bereits geparste Batches einer Datei innerhalb einer laufenden Transaktion.
+     * @param classifier gemeinsamer Classifier mehrerer Imports; bleibt offen
+     * @return Anzahl importierter Zeilen
+     */
+    int importRows(DSLContext txDsl, String fileName, String accountId, List<RowBatch> batches, ParallelClassifier classifier) {
+        Iterator<RowBatch> iterator = batches.iterator();
+        return importRows(txDsl, fileName, accountId, nextChunk(iterator, false), iterator, false, classifier);
+    }
+
+    private int importRows(DSLContext txDsl, String fileName, String accountId, RowBatch firstChunk, Iterator<RowBatch> remaining,
+            boolean parsing) {
+        return importRows(txDsl, fileName, accountId, firstChunk, remaining, parsing, null);
+    }
+
+    /**
+     * @param sharedClassifier null, um für diesen Import einen eigenen Classifier zu verwenden
+     */
+    private int importRows(DSLContext txDsl, String fileName, String accountId, RowBatch firstChunk, Iterator<RowBatch> remaining,
+            boolean parsing, ParallelClassifier sharedClassifier) {
         // Die Rule-Engine für diesen Import-Lauf initialisieren
         Rule ruleSet = RuleFactory.getRuleSet();
+        String unassignedId = context.getUnassignedCategory().getId();
+
+        ImportLogRecord importLog = txDsl.newRecord(IMPORT_LOG);
+        importLog.setAccountId(accountId);
+        importLog.setImportDate(LocalDateTime.now());
+        importLog.setFileName(fileName);
+        importLog.insert();
         
-        // Alles in einer atomaren Transaktion
-        context.getDsl().transaction(configuration -> {
-            DSLContext txDsl = DSL.using(configuration);
-
-            ImportLogRecord importLog = txDsl.newRecord(IMPORT_LOG);
-            importLog.setAccountId(accountId);
-            importLog.setImportDate(LocalDateTime.now());
-            importLog.setFileName(fileName);
-            importLog.insert();
-            
-            Integer currentImportId = importLog.getImportId();
-            
-            for (CsvRow row : csvRows) {
-                // 1. PaymentRecord erstellen und persistieren
-                // (ID wird durch das insert() automatisch im Record aktualisiert)
-                PaymentRecord paymentRec = txDsl.newRecord(PAYMENT);
-                paymentRec.setAccountId(accountId);
-                paymentRec.setBookingDate(row.bookingDate());
-                paymentRec.setAmount(row.amount());
-                paymentRec.setDescription(row.description());
-                paymentRec.setRawCsvLine(row.rawLine());
-                paymentRec.insert(); 
-
-                // 2. Rule Engine anwenden
-                // Wir konvertieren den Record kurz in ein POJO für das Interface
-                Payment paymentPojo = paymentRec.into(Payment.class);
-                String categoryId = ruleSet.categoryFor(paymentPojo)
-                                           .orElse(context.getUnassignedCategory().getId());
-
-                // 3. TransactionRecord erstellen (die Verknüpfung)
-                TransactionRecord transRec = txDsl.newRecord(TRANSACTION);
-                transRec.setPaymentId(paymentRec.getPaymentId());
-                transRec.setCategoryId(categoryId);
-                transRec.setAmount(paymentRec.getAmount());
-                transRec.setValidFrom(paymentRec.getBookingDate());
-                transRec.setValidTo(paymentRec.getBookingDate());
-                transRec.setDescription(paymentRec.getDescription());
-                
-                transRec.insert();
-
-                ImportEntryRecord entryRec = txDsl.newRecord(IMPORT_ENTRY);
-                entryRec.setImportId(currentImportId);
-                entryRec.setPaymentId(paymentRec.getPaymentId());
-                entryRec.insert();
+        Integer currentImportId = importLog.getImportId();
+        RowFingerprinter fingerprinter = new RowFingerprinter();
+        
+        int rowCount = 0;
+        int skipped = 0;
+        if (batchSize > 1) {
+            // Pipeline: während Chunk n auf mehreren Kernen klassifiziert wird, schreibt dieser Thread Chunk n-1
+            ParallelClassifier ownClassifier = sharedClassifier == null ? new ParallelClassifier(ruleSet) : null;
+            ParallelClassifier classifier = sharedClassifier != null ? sharedClassifier : ownClassifier;
+            try {
+                Chunk previous = null;
+                CompletableFuture<List<Optional<String>>> previousCategories = null;
+                for (RowBatch rows = firstChunk; !rows.isEmpty(); rows = nextChunk(remaining, parsing)) {
+                    Chunk chunk = fingerprint(txDsl, accountId, rows, fingerprinter);
+                    skipped += rows.size() - chunk.rows().size();
+                    CompletableFuture<List<Optional<String>>> categories = classifier.classifyAsync(chunk.rows(), accountId);
+                    if (previous != null) {
+                        insertChunk(txDsl, currentImportId, accountId, previous, previousCategories.join(), unassignedId);
+                    }
+                    previous = chunk;
+                    previousCategories = categories;
+                    rowCount += chunk.rows().size();
+                }
+                if (previous != null) {
+                    insertChunk(txDsl, currentImportId, accountId, previous, previousCategories.join(), unassignedId);
+                }
+            } finally {
+                if (ownClassifier != null) {
+                    ownClassifier.close();
+                }
             }
-            
-            System.out.println(csvRows.size() + " Einträge erfolgreich verarbeitet.");
-        });
+        } else {
+            for (RowBatch rows = firstChunk; !rows.isEmpty(); rows = nextChunk(remaining, parsing)) {
+                Chunk chunk = fingerprint(txDsl, accountId, rows, fingerprinter);
+                skipped += rows.size() - chunk.rows().size();
+                for (int i = 0; i < chunk.rows().size(); i++) {
+                    insertRow(txDsl, currentImportId, accountId, chunk.rows(), i, chunk.hashes().get(i), ruleSet, unassignedId);
+                }
+                rowCount += chunk.rows().size();
+            }
+        }
+
+        // Monatsaggregat einmal pro Import mengenbasiert nachführen
+        long aggregateStart = System.nanoTime();
+        MonthlyAggregate.add(txDsl, TRANSACTION.PAYMENT_ID.in(DSL.select(IMPORT_ENTRY.PAYMENT_ID)
+                .from(IMPORT_ENTRY)
+                .where(IMPORT_ENTRY.IMPORT_ID.eq(currentImportId))));
+        metrics.record(Stage.INSERT, System.nanoTime() - aggregateStart, 0);
+
+        if (skipped > 0) {
+            System.out.println(skipped + " bereits importierte Zeilen aus " + fileName + " übersprungen.");
+        }
+        return rowCount;
+    }
+
+    /**
+     * Einzel-Insert-Pfad: drei Roundtrips pro CSV-Zeile.
+     */
+    private void insertRow(DSLContext txDsl, Integer importId, String accountId, RowBatch rows, int row, long hash, Rule ruleSet, String unassignedId) {
+        long start = System.nanoTime();
+
+        // 1. PaymentRecord erstellen und persistieren
+        // (ID wird durch das insert() automatisch im Record aktualisiert)
+        PaymentRecord paymentRec = txDsl.newRecord(PAYMENT);
+        paymentRec.setAccountId(accountId);
+        paymentRec.setBookingDate(rows.bookingDate(row));
+        paymentRec.setAmount(rows.amount(row));
+        paymentRec.setDescription(rows.description(row));
+        paymentRec.setRawCsvLine(rows.rawLine(row));
+        paymentRec.insert(); 
+        DescriptionIndex.enqueue(txDsl, List.of(paymentRec.getPaymentId()));
+        PaymentHashIndex.record(txDsl, accountId, List.of(hash), List.of(paymentRec.getPaymentId()));
+
+        // 2. Rule Engine anwenden
+        // Wir konvertieren den Record kurz in ein POJO für das Interface
+        Payment paymentPojo = paymentRec.into(Payment.class);
+        long classifyStart = System.nanoTime();
+        Optional<String> category = ruleSet.categoryFor(paymentPojo);
+        long classifyNanos = System.nanoTime() - classifyStart;
+        metrics.recordClassification(classifyNanos, List.of(category));
+        String categoryId = category.orElse(unassignedId);
+
+        // 3. TransactionRecord erstellen (die Verknüpfung)
+        TransactionRecord transRec = txDsl.newRecord(TRANSACTION);
+        transRec.setPaymentId(paymentRec.getPaymentId());
+        transRec.setCategoryId(categoryId);
+        transRec.setAmount(paymentRec.getAmount());
+        transRec.setValidFrom(paymentRec.getBookingDate());
+        transRec.setValidTo(paymentRec.getBookingDate());
+        transRec.setDescription(paymentRec.getDescription());
+        
+        transRec.insert();
+
+        ImportEntryRecord entryRec = txDsl.newRecord(IMPORT_ENTRY);
+        entryRec.setImportId(importId);
+        entryRec.setPaymentId(paymentRec.getPaymentId());
+        entryRec.insert();
+
+        metrics.record(Stage.INSERT, System.nanoTime() - start - classifyNanos, 1);
+    }
+
+    /**
+     * Batch-Pfad: ein Multi-Row-Insert pro Tabelle und Chunk. Die generierten
+     * PAYMENT_IDs kommen gesammelt zurück und werden in Zeilenreihenfolge zugeordnet,
+     * das Ergebnis entspricht Zeile für Zeile dem Einzel-Insert-Pfad. LocalDate und BigDecimal
+     * entstehen erst hier beim Binden der Werte.
+     */
+    private void insertChunk(DSLContext txDsl, Integer importId, String accountId, Chunk batch,
+            List<Optional<String>> categories, String unassignedId) {
+        RowBatch chunk = batch.rows();
+        if (chunk.isEmpty()) return;
+        long start = System.nanoTime();
+
+        // 1. Payments in einem Statement einfügen
+        var paymentInsert = txDsl.insertInto(PAYMENT,
+                PAYMENT.ACCOUNT_ID, PAYMENT.BOOKING_DATE, PAYMENT.AMOUNT, PAYMENT.DESCRIPTION, PAYMENT.RAW_CSV_LINE);
+        for (int i = 0; i < chunk.size(); i++) {
+            paymentInsert = paymentInsert.values(accountId, chunk.bookingDate(i), chunk.amount(i), chunk.description(i), chunk.rawLine(i));
+        }
+
+        // Identity-Werte steigen innerhalb eines Statements monoton, sortiert entsprechen sie der Zeilenfolge
+        List<Integer> paymentIds = new ArrayList<>(paymentInsert
+                .returningResult(PAYMENT.PAYMENT_ID)
+                .fetch(PAYMENT.PAYMENT_ID));
+        paymentIds.sort(null);
+
+        if (paymentIds.size() != chunk.size()) {
+            throw new IllegalStateException(
+                String.format("Batch-Insert lieferte %d IDs für %d Zeilen.", paymentIds.size(), chunk.size()));
+        }
+        DescriptionIndex.enqueue(txDsl, paymentIds);
+        PaymentHashIndex.record(txDsl, accountId, batch.hashes(), paymentIds);
+
+        // 2. Transaktionen mit den vorab bestimmten Kategorien sowie Import-Einträge sammeln
+        var transactionInsert = txDsl.insertInto(TRANSACTION,
+                TRANSACTION.PAYMENT_ID, TRANSACTION.CATEGORY_ID, TRANSACTION.AMOUNT,
+                TRANSACTION.VALID_FROM, TRANSACTION.VALID_TO, TRANSACTION.DESCRIPTION);
+        var entryInsert = txDsl.insertInto(IMPORT_ENTRY, IMPORT_ENTRY.IMPORT_ID, IMPORT_ENTRY.PAYMENT_ID);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            Integer paymentId = paymentIds.get(i);
+            String categoryId = categories.get(i).orElse(unassignedId);
+            LocalDate bookingDate = chunk.bookingDate(i);
+
+            transactionInsert = transactionInsert.values(paymentId, categoryId, chunk.amount(i),
+                    bookingDate, bookingDate, chunk.description(i));
+            entryInsert = entryInsert.values(importId, paymentId);
+        }
+
+        // 3. Verknüpfungen ebenfalls je in einem Statement schreiben
+        transactionInsert.execute();
+        entryInsert.execute();
+
+        metrics.record(Stage.INSERT, System.nanoTime() - start, chunk.size());
     }    
     
     public static void main(String[] args) {
+        boolean dedupe = false;
+        boolean staged = false;
+        while (args.length > 0 && args[0].startsWith("--")) {
+            dedupe |= args[0].equals("--dedupe");
+            staged |= args[0].equals("--staged");
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
         if (args.length < 2) {
-            System.out.println("Usage: CSVImporter <account_id> <file_path>");
+            System.out.println("Usage: CSVImporter [--dedupe] [--staged] <account_id> <file_path> [batch_size]");
             return;
         }
 
@@ -138,10 +467,13 @@ public class CSVImporter {
         try (AppDataContext context = new AppDataContext()) {
         	String accountId = args[0];
 	        String filePath = args[1];
+	        int batchSize = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_BATCH_SIZE;
 	
-	        CSVImporter importer = new CSVImporter(context);
+	        CSVImporter importer = new CSVImporter(context, batchSize, dedupe);
 	        
-	        importer.processImport(accountId, filePath);
+	        importer.processImport(accountId, filePath, staged);
+	        PipelineMetrics.writeReportIfRequested();
+	        ProfilingRule.dumpIfEnabled();
         } catch (Exception e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
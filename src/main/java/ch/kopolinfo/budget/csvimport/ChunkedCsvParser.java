@@ -0,0 +1,159 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Parst eine gemappte Datei auf mehreren Kernen: der Inhalt nach der Kopfzeile wird in
+ * zeilenbündige Byte-Bereiche geteilt (MappedCsvFile.bodyRanges), jeder Bereich mit einem
+ * eigenen LineParser geparst und das Ergebnis in Dateireihenfolge (bzw. bei reversed von
+ * hinten nach vorne) wieder zu Batches von batchSize Zeilen zusammengesetzt. Die Batches sind
+ * damit identisch mit RowBatch.batches über linesWithoutHeader() bzw. reversedLinesWithoutHeader().
+ *
+ * Es werden höchstens zwei Bereiche pro Worker im Voraus geparst, der Speicherbedarf bleibt
+ * unabhängig von der Dateigrösse. Alle Dateien teilen sich einen Pool, so dass auch mehrere
+ * gleichzeitig geparste Dateien (ImportOrchestrator, ImportDaemon) nie mehr Threads belegen.
+ * Die Anzahl Worker lässt sich mit budget.parse.parallelism setzen (Standard: Anzahl Kerne,
+ * 1 parst sequentiell im aufrufenden Thread); gelesen wird sie beim ersten Aufruf.
+ * Die Bereichsgrösse in Bytes kommt aus budget.parse.chunkBytes (Standard 1 MiB), gelesen bei
+ * jedem Aufruf: 1 legt jede Zeilengrenze auf eine Bereichsgrenze, Integer.MAX_VALUE ergibt einen
+ * einzigen Bereich und damit den sequentiellen Pfad.
+ */
+public final class ChunkedCsvParser {
+    // Kleinere Bereiche lohnen den Aufwand pro Task nicht
+    private static final int CHUNK_BYTES = 1 << 20;
+
+    private ChunkedCsvParser() {}
+
+    // Erst beim ersten grossen File angelegt; die Worker sind Daemon-Threads und halten die JVM nicht auf
+    private static final class SharedPool {
+        static final int PARALLELISM = Integer.getInteger("budget.parse.parallelism", Runtime.getRuntime().availableProcessors());
+        static final ForkJoinPool POOL = PARALLELISM > 1 ? new ForkJoinPool(PARALLELISM) : null;
+    }
+
+    /**
+     * @param parsers liefert pro Bereich einen eigenen LineParser (CsvTokenizer sind nicht thread-safe)
+     * @return Batches in Import-Reihenfolge; close() schliesst die Datei
+     */
+    public static Stream<RowBatch> batches(MappedCsvFile file, boolean reversed, int batchSize,
+            Supplier<RowBatch.LineParser> parsers) {
+        List<MappedCsvFile.Range> ranges = file.bodyRanges(Integer.getInteger("budget.parse.chunkBytes", CHUNK_BYTES));
+        if (ranges.size() <= 1 || SharedPool.POOL == null) {
+            return RowBatch.batches(reversed ? file.reversedLinesWithoutHeader() : file.linesWithoutHeader(),
+                    batchSize, parsers.get());
+        }
+        if (reversed) {
+            Collections.reverse(ranges);
+        }
+
+        Merger merger = new Merger(file, reversed, Math.max(batchSize, 1), parsers, ranges.iterator(),
+                SharedPool.POOL, 2 * SharedPool.PARALLELISM);
+        return StreamSupport.stream(merger, false).onClose(() -> {
+            // Noch laufende Tasks lesen auf dem Mapping weiter, das bleibt über close() hinaus gültig
+            merger.cancel();
+            try {
+                file.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Holt die geparsten Bereiche in Reihenfolge ab und schneidet sie in Batches von batchSize Zeilen;
+     * für jeden abgeholten Bereich wird der nächste gestartet.
+     */
+    private static final class Merger extends Spliterators.AbstractSpliterator<RowBatch> {
+        private final MappedCsvFile file;
+        private final boolean reversed;
+        private final int batchSize;
+        private final Supplier<RowBatch.LineParser> parsers;
+        private final Iterator<MappedCsvFile.Range> ranges;
+        private final ForkJoinPool pool;
+        private final Deque<CompletableFuture<RowBatch>> pending = new ArrayDeque<>();
+
+        private RowBatch current = new RowBatch(0);
+        private int position;
+
+        Merger(MappedCsvFile file, boolean reversed, int batchSize, Supplier<RowBatch.LineParser> parsers,
+                Iterator<MappedCsvFile.Range> ranges, ForkJoinPool pool, int lookAhead) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.file = file;
+            this.reversed = reversed;
+            this.batchSize = batchSize;
+            this.parsers = parsers;
+            this.ranges = ranges;
+            this.pool = pool;
+            for (int i = 0; i < lookAhead && ranges.hasNext(); i++) {
+                submitNext();
+            }
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super RowBatch> action) {
+            RowBatch batch = new RowBatch(batchSize);
+            while (batch.size() < batchSize) {
+                if (position == current.size()) {
+                    if (pending.isEmpty()) break;
+                    current = join(pending.removeFirst());
+                    position = 0;
+                    if (ranges.hasNext()) submitNext();
+                    continue;
+                }
+                int to = Math.min(current.size(), position + batchSize - batch.size());
+                for (; position < to; position++) {
+                    batch.add(current.epochDay(position), current.amountCents(position),
+                            current.description(position), current.rawLine(position));
+                }
+            }
+            if (batch.isEmpty()) return false;
+            action.accept(batch);
+            return true;
+        }
+
+        // Noch nicht gestartete Bereiche einer abgebrochenen Datei belegen den Pool nicht weiter
+        void cancel() {
+            pending.forEach(future -> future.cancel(false));
+            pending.clear();
+        }
+
+        private void submitNext() {
+            MappedCsvFile.Range range = ranges.next();
+            pending.addLast(CompletableFuture.supplyAsync(() -> parse(range), pool));
+        }
+
+        private RowBatch parse(MappedCsvFile.Range range) {
+            RowBatch rows = new RowBatch(1024);
+            RowBatch.LineParser parser = parsers.get();
+            try (Stream<CharSequence> lines = reversed ? file.reversedLines(range) : file.lines(range)) {
+                lines.forEach(line -> parser.parse(line, rows));
+            }
+            return rows;
+        }
+
+        // Fehler aus dem Worker unverändert weiterreichen, wie beim sequentiellen Parsen
+        private static RowBatch join(CompletableFuture<RowBatch> future) {
+            try {
+                return future.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException cause) throw cause;
+                if (e.getCause() instanceof Error cause) throw cause;
+                throw e;
+            }
+        }
+    }
+}
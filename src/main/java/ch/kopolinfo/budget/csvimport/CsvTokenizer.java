@@ -0,0 +1,295 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.math.BigDecimal;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+
+/**
+ * Wiederverwendbarer CSV-Tokenizer. Eine Zeile wird genau einmal gescannt, pro Feld
+ * werden nur Start- und End-Offsets gemerkt. Strings entstehen erst, wenn ein Feld
+ * explizit abgeholt wird. Felder in Anführungszeichen dürfen das Trennzeichen enthalten,
+ * verdoppelte Anführungszeichen ("") stehen für ein einzelnes.
+ *
+ * Nicht thread-safe: pro Thread bzw. pro Stream eine eigene Instanz verwenden.
+ */
+public final class CsvTokenizer {
+
+    private final char delimiter;
+
+    private CharSequence line;
+    private int fieldCount;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private boolean[] escaped = new boolean[16];
+
+    public CsvTokenizer(char delimiter) {
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * Zerlegt die Zeile in Felder und gibt den Tokenizer für verkettete Zugriffe zurück.
+     */
+    public CsvTokenizer reset(CharSequence line) {
+        this.line = line;
+        this.fieldCount = 0;
+
+        int length = line.length();
+        int pos = 0;
+        while (true) {
+            int fieldStart = pos;
+            // Anführungszeichen auch nach führenden Leerzeichen erkennen
+            int quotePos = pos;
+            while (quotePos < length && line.charAt(quotePos) == ' ') quotePos++;
+
+            if (quotePos < length && line.charAt(quotePos) == '"') {
+                int start = quotePos + 1;
+                int end = start;
+                boolean hasEscapes = false;
+                while (end < length) {
+                    if (line.charAt(end) == '"') {
+                        if (end + 1 < length && line.charAt(end + 1) == '"') {
+                            hasEscapes = true;
+                            end += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    end++;
+                }
+                addField(start, end, hasEscapes);
+                // Rest bis zum nächsten Trennzeichen ignorieren
+                pos = end + 1;
+                while (pos < length && line.charAt(pos) != delimiter) pos++;
+            } else {
+                pos = fieldStart;
+                while (pos < length && line.charAt(pos) != delimiter) pos++;
+                addField(fieldStart, pos, false);
+            }
+
+            if (pos >= length) break;
+            pos++; // Trennzeichen
+        }
+        return this;
+    }
+
+    private void addField(int start, int end, boolean hasEscapes) {
+        if (fieldCount == starts.length) {
+            int capacity = fieldCount * 2;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            escaped = Arrays.copyOf(escaped, capacity);
+        }
+        starts[fieldCount] = start;
+        ends[fieldCount] = end;
+        escaped[fieldCount] = hasEscapes;
+        fieldCount++;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    public int start(int field) {
+        checkIndex(field);
+        return starts[field];
+    }
+
+    public int end(int field) {
+        checkIndex(field);
+        return ends[field];
+    }
+
+    public boolean isEmpty(int field) {
+        return trimmedStart(field) == trimmedEnd(field);
+    }
+
+    /**
+     * Feldinhalt ohne umschliessende Anführungszeichen, aber ungetrimmt.
+     */
+    public String field(int field) {
+        return text(start(field), end(field), escaped[field]);
+    }
+
+    public String trimmedField(int field) {
+        return text(trimmedStart(field), trimmedEnd(field), escaped[field]);
+    }
+
+    public boolean trimmedFieldStartsWith(int field, String prefix) {
+        int start = trimmedStart(field);
+        if (escaped[field]) return trimmedField(field).startsWith(prefix);
+        if (trimmedEnd(field) - start < prefix.length()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (line.charAt(start + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    public boolean trimmedFieldEqualsIgnoreCase(int field, String value) {
+        int start = trimmedStart(field);
+        int end = trimmedEnd(field);
+        if (end - start != value.length()) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char a = line.charAt(start + i);
+            char b = value.charAt(i);
+            if (a != b && Character.toUpperCase(a) != Character.toUpperCase(b)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Datum im Format yyyy-MM-dd am Feldanfang. Ein allfälliger Zeitanteil
+     * (z.B. "yyyy-MM-dd HH:mm:ss.S") wird ignoriert.
+     */
+    public LocalDate parseIsoDate(int field) {
+        int start = trimmedStart(field);
+        if (trimmedEnd(field) - start < 10 || line.charAt(start + 4) != '-' || line.charAt(start + 7) != '-') {
+            throw dateError(field, "yyyy-MM-dd");
+        }
+        return toDate(field, "yyyy-MM-dd",
+                digits(field, start, 4), digits(field, start + 5, 2), digits(field, start + 8, 2));
+    }
+
+    /**
+     * Datum im Format dd-MM-yyyy.
+     */
+    public LocalDate parseDayMonthYear(int field) {
+        int start = trimmedStart(field);
+        if (trimmedEnd(field) - start != 10 || line.charAt(start + 2) != '-' || line.charAt(start + 5) != '-') {
+            throw dateError(field, "dd-MM-yyyy");
+        }
+        return toDate(field, "dd-MM-yyyy",
+                digits(field, start + 6, 4), digits(field, start + 3, 2), digits(field, start, 2));
+    }
+
+    /**
+     * Dezimalbetrag wie "-1234.50". Bis 18 Ziffern ohne Zwischen-String,
+     * alles andere (Exponenten, sehr lange Zahlen) über new BigDecimal(String).
+     */
+    public BigDecimal parseDecimal(int field) {
+        int start = trimmedStart(field);
+        int end = trimmedEnd(field);
+
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+
+        long unscaled = 0;
+        int digitCount = 0;
+        int scale = 0;
+        boolean fraction = false;
+        for (; pos < end; pos++) {
+            char c = line.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (++digitCount > 18) return new BigDecimal(trimmedField(field));
+                unscaled = unscaled * 10 + (c - '0');
+                if (fraction) scale++;
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                // Exponent oder ungültiges Zeichen: Fehlermeldung bzw. Parsing dem BigDecimal überlassen
+                return new BigDecimal(trimmedField(field));
+            }
+        }
+        if (digitCount == 0) {
+            throw new NumberFormatException("Kein Betrag in Feld " + field + ": '" + trimmedField(field) + "'");
+        }
+        return BigDecimal.valueOf(negative ? -unscaled : unscaled, scale);
+    }
+
+    /**
+     * Betrag in Rappen (zwei Nachkommastellen, siehe RowBatch) ohne BigDecimal. Weitere
+     * Nachkommastellen sind nur als Nullen erlaubt; alles Übrige wie parseDecimal.
+     */
+    public long parseCents(int field) {
+        int start = trimmedStart(field);
+        int end = trimmedEnd(field);
+
+        int pos = start;
+        boolean negative = false;
+        if (pos < end && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+            negative = line.charAt(pos) == '-';
+            pos++;
+        }
+
+        long cents = 0;
+        int digitCount = 0;
+        int scale = -1;
+        for (; pos < end; pos++) {
+            char c = line.charAt(pos);
+            if (c >= '0' && c <= '9') {
+                if (scale >= RowBatch.SCALE) {
+                    // Über die Rappen hinaus nur Nullen, sonst wäre der Betrag nicht exakt
+                    if (c != '0') return RowBatch.toCents(parseDecimal(field));
+                    continue;
+                }
+                if (++digitCount > 16) return RowBatch.toCents(parseDecimal(field));
+                cents = cents * 10 + (c - '0');
+                if (scale >= 0) scale++;
+            } else if (c == '.' && scale < 0) {
+                scale = 0;
+            } else {
+                return RowBatch.toCents(parseDecimal(field));
+            }
+        }
+        if (digitCount == 0) {
+            throw new NumberFormatException("Kein Betrag in Feld " + field + ": '" + trimmedField(field) + "'");
+        }
+        for (int i = Math.max(scale, 0); i < RowBatch.SCALE; i++) {
+            cents *= 10;
+        }
+        return negative ? -cents : cents;
+    }
+
+    private int trimmedStart(int field) {
+        int start = start(field);
+        int end = ends[field];
+        while (start < end && Character.isWhitespace(line.charAt(start))) start++;
+        return start;
+    }
+
+    private int trimmedEnd(int field) {
+        int start = start(field);
+        int end = ends[field];
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) end--;
+        return end;
+    }
+
+    private String text(int start, int end, boolean hasEscapes) {
+        String text = line.subSequence(start, end).toString();
+        return hasEscapes ? text.replace("\"\"", "\"") : text;
+    }
+
+    private int digits(int field, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = line.charAt(i);
+            if (c < '0' || c > '9') throw dateError(field, "Ziffer erwartet");
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private LocalDate toDate(int field, String pattern, int year, int month, int day) {
+        try {
+            return LocalDate.of(year, month, day);
+        } catch (DateTimeException e) {
+            throw dateError(field, pattern);
+        }
+    }
+
+    private DateTimeParseException dateError(int field, String expected) {
+        String text = trimmedField(field);
+        return new DateTimeParseException("Ungültiges Datum '" + text + "' (" + expected + ")", text, 0);
+    }
+
+    private void checkIndex(int field) {
+        if (field < 0 || field >= fieldCount) {
+            throw new IndexOutOfBoundsException("Feld " + field + " existiert nicht (" + fieldCount + " Felder)");
+        }
+    }
+}
@@ -8,22 +8,105 @@ import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.jooq.Condition;
 import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
 import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.db.DescriptionIndex;
+import ch.kopolinfo.budget.db.MonthlyAggregate;
+import ch.kopolinfo.budget.db.PaymentHashIndex;
+import ch.kopolinfo.budget.db.TransactionAllocation;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.metrics.PipelineMetrics.Stage;
 
 public class FileDeleter {
+    // Payments pro Lösch-Chunk, anpassbar über -Dbudget.delete.chunkSize
+    public static final int DEFAULT_CHUNK_SIZE = 5000;
+
+    /**
+     * Löscht die Imports mengenbasiert: die Payments werden über IMPORT_ENTRY.IMPORT_ID
+     * in PAYMENT_ID-Bereichen zu je chunkSize Zeilen bestimmt, ohne sie in Java zu sammeln.
+     * Jeder Chunk entfernt Transaktionen, Indexeinträge, Payments und Import-Einträge in einer
+     * eigenen Transaktion, das Import-Log erst ganz am Schluss. Ein abgebrochener Lauf lässt
+     * so nur vollständig gelöschte Payments zurück und kann einfach wiederholt werden.
+     *
+     * @return Anzahl gelöschter Payments
+     */
+    public static int deleteImports(DSLContext dsl, List<Integer> importIds, int chunkSize) {
+        Condition ofImports = IMPORT_ENTRY.IMPORT_ID.in(importIds);
+        int total = dsl.fetchCount(IMPORT_ENTRY, ofImports);
+        System.out.println(total + " Payments in " + importIds.size() + " Import(s) zu löschen.");
+
+        int deleted = 0;
+        int lower = Integer.MIN_VALUE;
+        while (true) {
+            Integer upper = upperBound(dsl, ofImports, lower, chunkSize);
+            if (upper == null) break;
+
+            Condition inRange = ofImports
+                    .and(IMPORT_ENTRY.PAYMENT_ID.gt(lower))
+                    .and(IMPORT_ENTRY.PAYMENT_ID.le(upper));
+            Condition payments = PAYMENT.PAYMENT_ID.gt(lower)
+                    .and(PAYMENT.PAYMENT_ID.le(upper))
+                    .and(PAYMENT.PAYMENT_ID.in(DSL.select(IMPORT_ENTRY.PAYMENT_ID).from(IMPORT_ENTRY).where(inRange)));
+
+            long start = System.nanoTime();
+            int deletedPayments = dsl.transactionResult(configuration -> {
+                DSLContext txDsl = configuration.dsl();
+                Condition transactions = TRANSACTION.PAYMENT_ID.in(DSL.select(IMPORT_ENTRY.PAYMENT_ID).from(IMPORT_ENTRY).where(inRange));
+                MonthlyAggregate.subtract(txDsl, transactions);
+                TransactionAllocation.remove(txDsl, transactions);
+                txDsl.deleteFrom(TRANSACTION).where(transactions).execute();
+                DescriptionIndex.remove(txDsl, payments);
+                PaymentHashIndex.remove(txDsl, payments);
+
+                int count = txDsl.deleteFrom(PAYMENT).where(payments).execute();
+                txDsl.deleteFrom(IMPORT_ENTRY).where(inRange).execute();
+                return count;
+            });
+            PipelineMetrics.global().record(Stage.DELETE, System.nanoTime() - start, deletedPayments);
+            deleted += deletedPayments;
+            System.out.println(String.format("%d / %d Payments gelöscht.", deleted, total));
+            lower = upper;
+        }
+
+        dsl.deleteFrom(IMPORT_LOG)
+                .where(IMPORT_LOG.IMPORT_ID.in(importIds))
+                .execute();
+        return deleted;
+    }
+
+    /**
+     * Grösste PAYMENT_ID der nächsten chunkSize Import-Einträge nach lower, null wenn keine mehr übrig sind.
+     */
+    private static Integer upperBound(DSLContext dsl, Condition ofImports, int lower, int chunkSize) {
+        var chunk = DSL.select(IMPORT_ENTRY.PAYMENT_ID)
+                .from(IMPORT_ENTRY)
+                .where(ofImports.and(IMPORT_ENTRY.PAYMENT_ID.gt(lower)))
+                .orderBy(IMPORT_ENTRY.PAYMENT_ID)
+                .limit(chunkSize)
+                .asTable("CHUNK");
+        return dsl.select(DSL.max(chunk.field(IMPORT_ENTRY.PAYMENT_ID)))
+                .from(chunk)
+                .fetchOne(0, Integer.class);
+    }
 
     public static void main(String[] args) {
-        // Erwartet nun: <HH:MM> <import_log_id>
+        // Erwartet nun: <HH:MM> <import_log_id> [<import_log_id> ...]
         if (args.length < 2) {
-            System.out.println("Usage: FileDeleter <HH:MM> <import_log_id>");
+            System.out.println("Usage: FileDeleter <HH:MM> <import_log_id> [<import_log_id> ...]");
             return;
         }
 
         String safetyTimeStr = args[0];
-        int importId = Integer.parseInt(args[1]);
+        List<Integer> importIds = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            importIds.add(Integer.parseInt(args[i]));
+        }
 
         // Sicherheitsprüfung der Zeit
         if (!isTimeValid(safetyTimeStr)) {
@@ -34,36 +117,22 @@ public class FileDeleter {
 
         try (AppDataContext context = new AppDataContext()) {
             DSLContext dsl = context.getDsl();
-            System.out.println("Sicherheitscheck OK. Starte Löschvorgang für Import ID: " + importId);
-
-            dsl.transaction(configuration -> {
-                var txDsl = configuration.dsl();
-
-                List<Integer> paymentIds = txDsl.select(IMPORT_ENTRY.PAYMENT_ID)
-                        .from(IMPORT_ENTRY)
-                        .where(IMPORT_ENTRY.IMPORT_ID.eq(importId))
-                        .fetchInto(Integer.class);
-
-                if (!paymentIds.isEmpty()) {
-                    int deletedTrans = txDsl.deleteFrom(TRANSACTION)
-                            .where(TRANSACTION.PAYMENT_ID.in(paymentIds))
-                            .execute();
-                    System.out.println(deletedTrans + " zugehörige Transactions gelöscht.");
-
-                    int deletedPayments = txDsl.deleteFrom(PAYMENT)
-                            .where(PAYMENT.PAYMENT_ID.in(paymentIds))
-                            .execute();
-                    System.out.println(deletedPayments + " Payments gelöscht.");
+            System.out.println("Sicherheitscheck OK. Starte Löschvorgang für Import IDs: " + importIds);
+
+            List<Integer> known = dsl.select(IMPORT_LOG.IMPORT_ID)
+                    .from(IMPORT_LOG)
+                    .where(IMPORT_LOG.IMPORT_ID.in(importIds))
+                    .fetch(IMPORT_LOG.IMPORT_ID);
+            for (Integer importId : importIds) {
+                if (!known.contains(importId)) {
+                    System.out.println("Import ID " + importId + " existiert nicht im Import-Log.");
                 }
+            }
 
-                txDsl.deleteFrom(IMPORT_LOG)
-                        .where(IMPORT_LOG.IMPORT_ID.eq(importId))
-                        .execute();
-
-                System.out.println("Import-Log und Verknüpfungen erfolgreich entfernt.");
-            });
-
+            int deleted = deleteImports(dsl, importIds, Integer.getInteger("budget.delete.chunkSize", DEFAULT_CHUNK_SIZE));
+            System.out.println(deleted + " Payments samt Transactions und Import-Einträgen gelöscht.");
             System.out.println("Löschvorgang erfolgreich abgeschlossen.");
+            PipelineMetrics.writeReportIfRequested();
 
         } catch (Exception e) {
             System.err.println("Fehler beim Löschen des Imports:");
@@ -2,7 +2,28 @@ package ch.kopolinfo.budget.csvimport;
 
 import java.nio.file.Path;
 import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public interface FileImporter {
-    List<CsvRow> parseFile(Path filePath) throws Exception;
+    /**
+     * Liefert die Zeilen in Import-Reihenfolge als RowBatches zu je batchSize Zeilen, ohne die
+     * ganze Datei zu materialisieren. Der Stream hält die Datei offen und muss vom Aufrufer
+     * geschlossen werden.
+     */
+    Stream<RowBatch> streamBatches(Path filePath, int batchSize) throws Exception;
+
+    /**
+     * Wie streamBatches, aber Zeile für Zeile als CsvRow.
+     */
+    default Stream<CsvRow> streamFile(Path filePath) throws Exception {
+        return streamBatches(filePath, 1024)
+            .flatMap(batch -> IntStream.range(0, batch.size()).mapToObj(batch::toCsvRow));
+    }
+
+    default List<CsvRow> parseFile(Path filePath) throws Exception {
+        try (Stream<CsvRow> rows = streamFile(filePath)) {
+            return rows.toList();
+        }
+    }
 }
@@ -0,0 +1,376 @@
+package ch.kopolinfo.budget.csvimport;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.rules.ProfilingRule;
+import ch.kopolinfo.budget.rules.RuleStore;
+import ch.kopolinfo.budget.rules.RulesApplier;
+
+/**
+ * Dienst-Modus: hält eine AppDataContext und das kompilierte Regelwerk im Speicher und
+ * importiert neue Exporte, sobald sie im Eingangsverzeichnis auftauchen. Aufbau wie beim
+ * ImportOrchestrator, ein Unterverzeichnis pro Account-ID (&lt;inbox&gt;/&lt;ACCOUNT_ID&gt;/*.csv).
+ *
+ * Eine Datei wird erst importiert, wenn sich Grösse und Zeitstempel während der Debounce-Zeit
+ * nicht mehr geändert haben, halb geschriebene Dateien bleiben so liegen. Danach wandert sie
+ * nach processed/ bzw. bei einem Fehler nach failed/ (mit der Fehlermeldung in *.error.txt).
+ * Jeder Import läuft wie bei CSVImporter in einer eigenen Transaktion mit IMPORT_LOG-Eintrag.
+ * Importiert wird aus einer temporären Kopie: die Importer mappen ihre Datei, und unter Windows
+ * lässt sich eine gemappte Datei erst verschieben, wenn der Puffer vom GC freigegeben ist. Das
+ * Original bleibt so ungemappt und kann sofort weg, sonst würde es beim nächsten Start erneut
+ * importiert. Lässt es sich trotzdem nicht verschieben, wird es bis zum Neustart ignoriert.
+ *
+ * Regeländerungen gleicht ein Hintergrund-Thread mit niedriger Priorität ab
+ * (RulesApplier.applyIncremental); Import und Abgleich laufen nie gleichzeitig.
+ */
+public class ImportDaemon implements AutoCloseable {
+    public static final Duration DEFAULT_DEBOUNCE = Duration.ofSeconds(2);
+    // Wie oft der Hintergrund-Thread den Zeitstempel der Regel-Datei prüft
+    private static final Duration RULE_CHECK_INTERVAL = Duration.ofSeconds(30);
+
+    private static final String PROCESSED_DIR = "processed";
+    private static final String FAILED_DIR = "failed";
+
+    // Zuletzt gesehener Stand einer Datei und seit wann er unverändert ist
+    private record Pending(long size, FileTime modified, long stableSinceNanos) {}
+
+    private final AppDataContext context;
+    private final Path inbox;
+    private final CSVImporter importer;
+    private final long debounceNanos;
+    private final WatchService watcher;
+    private final ScheduledExecutorService rulesExecutor;
+    // Import und Regelabgleich schreiben in dieselben Tabellen, nie beides zugleich
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final Map<Path, Pending> pending = new HashMap<>();
+    // Importiert, aber nicht aus der Inbox verschoben: nicht nochmals importieren
+    private final Set<Path> stuck = new HashSet<>();
+    // Temporäre Kopien, deren Löschen noch an einem Mapping scheiterte
+    private final List<Path> leftoverCopies = new ArrayList<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+
+    private volatile boolean running;
+    private volatile String appliedRulesVersion;
+
+    public ImportDaemon(AppDataContext context, Path inbox, boolean dedupe, Duration debounce) throws IOException {
+        if (!Files.isDirectory(inbox)) {
+            throw new IllegalArgumentException("Eingangsverzeichnis nicht gefunden: " + inbox);
+        }
+        this.context = context;
+        this.inbox = inbox;
+        this.importer = new CSVImporter(context, CSVImporter.DEFAULT_BATCH_SIZE, dedupe);
+        this.debounceNanos = debounce.toNanos();
+        this.watcher = inbox.getFileSystem().newWatchService();
+        this.rulesExecutor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "budget-rules");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Überwacht das Eingangsverzeichnis, bis close() aufgerufen wird. Bereits vorhandene
+     * Dateien werden beim Start wie neue behandelt.
+     */
+    public void run() throws IOException {
+        running = true;
+        try {
+            watch(inbox);
+            try (Stream<Path> accountDirs = Files.list(inbox)) {
+                for (Path accountDir : accountDirs.filter(Files::isDirectory).toList()) {
+                    watchAccount(accountDir);
+                }
+            }
+            rulesExecutor.scheduleWithFixedDelay(this::applyRulesIfChanged,
+                    0, RULE_CHECK_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            System.out.println("Überwache " + inbox.toAbsolutePath() + " (Debounce " + debounceNanos / 1_000_000 + " ms).");
+
+            long pollMillis = Math.max(debounceNanos / 2_000_000, 50);
+            while (true) {
+                // Solange Dateien auf das Ende der Debounce-Zeit warten, regelmässig nachsehen
+                WatchKey key = pending.isEmpty() ? watcher.take() : watcher.poll(pollMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    handle(key);
+                }
+                importReadyFiles();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // close() beendet die Überwachung
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void handle(WatchKey key) throws IOException {
+        Path dir = watchedDirs.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Ereignisse verloren: alle Account-Verzeichnisse neu einlesen
+                for (Path watched : List.copyOf(watchedDirs.values())) {
+                    if (!watched.equals(inbox)) scan(watched);
+                }
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            if (dir.equals(inbox)) {
+                if (Files.isDirectory(path)) watchAccount(path);
+            } else if (isCsv(path) && !stuck.contains(path)) {
+                pending.putIfAbsent(path, new Pending(-1, null, System.nanoTime()));
+            }
+        }
+        if (!key.reset()) {
+            watchedDirs.remove(key);
+        }
+    }
+
+    private void watchAccount(Path accountDir) throws IOException {
+        watch(accountDir);
+        scan(accountDir);
+    }
+
+    private void watch(Path dir) throws IOException {
+        watchedDirs.put(dir.register(watcher, ENTRY_CREATE, ENTRY_MODIFY), dir);
+    }
+
+    private void scan(Path accountDir) throws IOException {
+        try (Stream<Path> files = Files.list(accountDir)) {
+            files.filter(ImportDaemon::isCsv)
+                    .filter(file -> !stuck.contains(file))
+                    .forEach(file -> pending.putIfAbsent(file, new Pending(-1, null, System.nanoTime())));
+        }
+    }
+
+    private static boolean isCsv(Path path) {
+        return Files.isRegularFile(path) && path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+    }
+
+    /**
+     * Importiert alle Dateien, die seit der Debounce-Zeit unverändert sind, pro Account nach Namen sortiert.
+     */
+    private void importReadyFiles() {
+        long now = System.nanoTime();
+        List<Path> ready = new ArrayList<>();
+        for (var iterator = pending.entrySet().iterator(); iterator.hasNext();) {
+            var entry = iterator.next();
+            Path file = entry.getKey();
+            Pending last = entry.getValue();
+            try {
+                long size = Files.size(file);
+                FileTime modified = Files.getLastModifiedTime(file);
+                if (size != last.size() || !Objects.equals(modified, last.modified())) {
+                    entry.setValue(new Pending(size, modified, now));
+                } else if (now - last.stableSinceNanos() >= debounceNanos) {
+                    ready.add(file);
+                    iterator.remove();
+                }
+            } catch (IOException e) {
+                // Datei inzwischen verschoben oder gelöscht
+                iterator.remove();
+            }
+        }
+
+        ready.sort(null);
+        for (Path file : ready) {
+            importFile(file);
+        }
+        if (!leftoverCopies.isEmpty()) {
+            leftoverCopies.removeIf(ImportDaemon::deleteCopy);
+        }
+    }
+
+    private void importFile(Path file) {
+        String accountId = file.getParent().getFileName().toString();
+        writeLock.lock();
+        Path copy = null;
+        try {
+            System.out.println("Neue Datei " + inbox.relativize(file) + ", starte Import für Account: " + accountId);
+            // Gleicher Dateiname in eigenem Verzeichnis, IMPORT_LOG.FILE_NAME bleibt der des Originals
+            copy = Files.createTempDirectory("budget-import-").resolve(file.getFileName());
+            Files.copy(file, copy);
+            int rowCount = importer.importFile(accountId, copy);
+            System.out.println(rowCount + " Einträge erfolgreich verarbeitet.");
+            if (moveTo(file, PROCESSED_DIR) == null) {
+                stuck.add(file);
+                System.err.println("Achtung: " + inbox.relativize(file) + " ist importiert, liegt aber noch in der Inbox."
+                        + " Bitte vor dem nächsten Start von Hand nach " + PROCESSED_DIR + "/ verschieben.");
+            }
+        } catch (Exception e) {
+            System.err.println("Import von " + inbox.relativize(file) + " fehlgeschlagen: " + e.getMessage());
+            Path failed = moveTo(file, FAILED_DIR);
+            if (failed != null) {
+                writeError(failed, e);
+            } else {
+                stuck.add(file);
+            }
+        } finally {
+            writeLock.unlock();
+            if (copy != null && !deleteCopy(copy)) {
+                leftoverCopies.add(copy);
+            }
+        }
+    }
+
+    /**
+     * Verschiebt die Datei und prüft, dass sie danach nicht mehr in der Inbox liegt.
+     * @return neuer Pfad, null wenn die Datei noch am alten Ort liegt
+     */
+    private Path moveTo(Path file, String subDir) {
+        try {
+            Path targetDir = Files.createDirectories(file.resolveSibling(subDir));
+            Path target = targetDir.resolve(file.getFileName());
+            if (Files.exists(target)) {
+                // Gleichnamige Datei schon verarbeitet: mit Zeitstempel ablegen
+                String stamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-"));
+                target = targetDir.resolve(stamp + file.getFileName());
+            }
+            Path moved;
+            try {
+                moved = Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                moved = Files.move(file, target);
+            }
+            if (Files.exists(file) || !Files.exists(moved)) {
+                throw new IOException("Datei nach dem Verschieben noch am alten Ort");
+            }
+            return moved;
+        } catch (IOException e) {
+            System.err.println("Datei " + file + " konnte nicht nach " + subDir + " verschoben werden: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Löscht die temporäre Kopie samt Verzeichnis; scheitert unter Windows, solange sie noch gemappt ist.
+     */
+    private static boolean deleteCopy(Path copy) {
+        try {
+            Files.deleteIfExists(copy);
+            Files.deleteIfExists(copy.getParent());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static void writeError(Path failedFile, Exception error) {
+        StringWriter text = new StringWriter();
+        error.printStackTrace(new PrintWriter(text));
+        try {
+            Files.writeString(failedFile.resolveSibling(failedFile.getFileName() + ".error.txt"), text.toString(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            System.err.println("Fehlerprotokoll für " + failedFile + " nicht schreibbar: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Läuft im Hintergrund-Thread: gleicht die Zuordnungen ab, sobald sich das Regelwerk
+     * geändert hat. Der erste Durchlauf holt einen beim letzten Lauf verpassten Abgleich nach.
+     */
+    private void applyRulesIfChanged() {
+        try {
+            String version = RuleStore.getDefault().current().version();
+            if (version.equals(appliedRulesVersion)) return;
+
+            writeLock.lock();
+            try {
+                new RulesApplier(context).applyIncremental();
+                appliedRulesVersion = version;
+            } finally {
+                writeLock.unlock();
+            }
+        } catch (RuntimeException e) {
+            // Nächster Versuch im nächsten Intervall, der Dienst läuft weiter
+            System.err.println("Regelabgleich fehlgeschlagen: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Beendet die Überwachung und wartet, bis ein laufender Import abgeschlossen ist.
+     */
+    @Override
+    public void close() throws IOException {
+        rulesExecutor.shutdownNow();
+        watcher.close();
+        try {
+            if (running) stopped.await(1, TimeUnit.MINUTES);
+            rulesExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) {
+        boolean dedupe = args.length > 0 && args[0].equals("--dedupe");
+        int argIndex = dedupe ? 1 : 0;
+        if (args.length <= argIndex) {
+            System.out.println("Usage: ImportDaemon [--dedupe] <inbox> [debounce_ms]");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            Path inbox = Paths.get(args[argIndex]);
+            Duration debounce = args.length > argIndex + 1
+                    ? Duration.ofMillis(Long.parseLong(args[argIndex + 1]))
+                    : DEFAULT_DEBOUNCE;
+
+            ImportDaemon daemon = new ImportDaemon(context, inbox, dedupe, debounce);
+            Thread main = Thread.currentThread();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                System.out.println("Beende Überwachung...");
+                try {
+                    daemon.close();
+                    main.join(Duration.ofMinutes(1));
+                } catch (IOException | InterruptedException e) {
+                    // Prozess endet ohnehin
+                }
+            }));
+
+            daemon.run();
+            PipelineMetrics.writeReportIfRequested();
+            ProfilingRule.dumpIfEnabled();
+        } catch (Exception e) {
+            System.err.println("Fehler im Import-Dienst:");
+            e.printStackTrace();
+        }
+    }
+}
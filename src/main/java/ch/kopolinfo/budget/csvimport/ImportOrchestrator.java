@@ -0,0 +1,245 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Stream;
+
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
+import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.metrics.PipelineMetrics.Stage;
+import ch.kopolinfo.budget.rules.ParallelClassifier;
+import ch.kopolinfo.budget.rules.ProfilingRule;
+import ch.kopolinfo.budget.rules.RuleFactory;
+
+/**
+ * Importiert viele Dateien für mehrere Accounts in einem Lauf. Alle Dateien werden
+ * parallel auf virtuellen Threads geparst; geschrieben wird pro Account in einer eigenen,
+ * atomaren Transaktion, die Dateien eines Accounts nacheinander in Buchungsreihenfolge.
+ * So bleibt die Watermark-Prüfung korrekt, während verschiedene Accounts parallel laufen.
+ * Da jeder Writer für seine ganze Transaktion eine Verbindung hält, schreiben höchstens
+ * budget.db.poolSize - 1 Accounts gleichzeitig; die übrigen warten vor der Transaktion. Eine
+ * Verbindung bleibt frei für Lookups ausserhalb der Transaktion (z.B. die Metadaten beim ersten
+ * Zugriff). Alle Writer klassifizieren über einen gemeinsamen ParallelClassifier.
+ *
+ * Eingabe ist entweder ein Verzeichnis mit einem Unterverzeichnis pro Account-ID
+ * (&lt;dir&gt;/&lt;ACCOUNT_ID&gt;/*.csv) oder eine Manifest-Datei mit Zeilen "ACCOUNT_ID;Pfad".
+ */
+public class ImportOrchestrator {
+
+    public record AccountResult(String accountId, int files, int rows, long millis, Exception error) {}
+
+    private record ParsedFile(Path path, List<RowBatch> batches) {
+        LocalDate firstBookingDate() {
+            return batches.isEmpty() ? null : batches.get(0).bookingDate(0);
+        }
+    }
+
+    private final AppDataContext context;
+    private final CSVImporter importer;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
+
+    public ImportOrchestrator(AppDataContext context) {
+        this(context, false);
+    }
+
+    public ImportOrchestrator(AppDataContext context, boolean dedupe) {
+        this.context = context;
+        this.importer = new CSVImporter(context, CSVImporter.DEFAULT_BATCH_SIZE, dedupe);
+    }
+
+    public List<AccountResult> run(Map<String, List<Path>> filesByAccount) throws InterruptedException {
+        Semaphore connections = new Semaphore(Math.max(1, context.getPoolSize() - 1));
+        try (ParallelClassifier classifier = new ParallelClassifier(RuleFactory.getRuleSet());
+                ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // 1. Alle Dateien gleichzeitig parsen
+            Map<Path, Future<List<RowBatch>>> parsed = new HashMap<>();
+            filesByAccount.forEach((accountId, paths) -> {
+                for (Path path : paths) {
+                    parsed.put(path, executor.submit(() -> parse(accountId, path)));
+                }
+            });
+
+            // 2. Ein Writer pro Account, die Accounts untereinander parallel
+            List<Future<AccountResult>> writers = new ArrayList<>();
+            filesByAccount.forEach((accountId, paths) ->
+                    writers.add(executor.submit(() -> importAccount(accountId, paths, parsed, connections, classifier))));
+
+            List<AccountResult> results = new ArrayList<>();
+            for (Future<AccountResult> writer : writers) {
+                try {
+                    results.add(writer.get());
+                } catch (ExecutionException e) {
+                    // importAccount fängt selbst ab, hier landen nur unerwartete Fehler
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return results;
+        }
+    }
+
+    private List<RowBatch> parse(String accountId, Path path) throws Exception {
+        long start = System.nanoTime();
+        try (Stream<RowBatch> stream = context.getImporter(accountId).streamBatches(path, CSVImporter.DEFAULT_BATCH_SIZE)) {
+            List<RowBatch> batches = stream.toList();
+            metrics.record(Stage.PARSE, System.nanoTime() - start, batches.stream().mapToInt(RowBatch::size).sum());
+            return batches;
+        }
+    }
+
+    private AccountResult importAccount(String accountId, List<Path> paths, Map<Path, Future<List<RowBatch>>> parsed,
+            Semaphore connections, ParallelClassifier classifier) {
+        long start = System.nanoTime();
+        try {
+            List<ParsedFile> files = new ArrayList<>();
+            for (Path path : paths) {
+                try {
+                    files.add(new ParsedFile(path, parsed.get(path).get()));
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Datei " + path.getFileName() + " nicht lesbar: " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+
+            // Nach erster Buchung sortieren, damit jede Datei an die vorherige anschliesst
+            files.sort(Comparator.comparing(file -> file.batches().isEmpty() ? LocalDate.MAX : file.firstBookingDate()));
+
+            // Erst mit freier Verbindung starten, sonst bricht H2 nach 30 s mit "Login timeout" ab
+            connections.acquire();
+            int rows;
+            try {
+                rows = context.getDsl().transactionResult(configuration -> {
+                    DSLContext txDsl = DSL.using(configuration);
+                    int count = 0;
+                    for (ParsedFile file : files) {
+                        importer.validateImportDate(txDsl, accountId, file.firstBookingDate());
+                        count += importer.importRows(txDsl, file.path().getFileName().toString(), accountId, file.batches(), classifier);
+                    }
+                    return count;
+                });
+            } finally {
+                connections.release();
+            }
+            metrics.recordImport(System.nanoTime() - start, rows);
+            return new AccountResult(accountId, files.size(), rows, elapsedMillis(start), null);
+        } catch (Exception e) {
+            return new AccountResult(accountId, paths.size(), 0, elapsedMillis(start), e);
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Manifest: pro Zeile "ACCOUNT_ID;Pfad", relative Pfade gelten ab dem Manifest, # für Kommentare.
+     */
+    static Map<String, List<Path>> readManifest(Path manifest) throws IOException {
+        Map<String, List<Path>> filesByAccount = new LinkedHashMap<>();
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        List<String> lines = Files.readAllLines(manifest);
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.stripLeading().startsWith("#")) continue;
+
+            tokenizer.reset(line);
+            if (tokenizer.fieldCount() < 2) {
+                throw new IllegalArgumentException("Manifest " + manifest + ", Zeile " + (i + 1) + ": erwartet ACCOUNT_ID;Pfad");
+            }
+            Path path = manifest.toAbsolutePath().resolveSibling(tokenizer.trimmedField(1));
+            filesByAccount.computeIfAbsent(tokenizer.trimmedField(0), a -> new ArrayList<>()).add(path);
+        }
+        return filesByAccount;
+    }
+
+    /**
+     * Verzeichnis: ein Unterverzeichnis pro Account-ID mit den CSV-Dateien, nach Namen sortiert.
+     */
+    static Map<String, List<Path>> scanDirectory(Path directory) throws IOException {
+        Map<String, List<Path>> filesByAccount = new LinkedHashMap<>();
+        try (Stream<Path> accountDirs = Files.list(directory)) {
+            for (Path accountDir : accountDirs.filter(Files::isDirectory).sorted().toList()) {
+                try (Stream<Path> files = Files.list(accountDir)) {
+                    List<Path> csvFiles = files
+                            .filter(Files::isRegularFile)
+                            .filter(file -> file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv"))
+                            .sorted()
+                            .toList();
+                    if (!csvFiles.isEmpty()) {
+                        filesByAccount.put(accountDir.getFileName().toString(), csvFiles);
+                    }
+                }
+            }
+        }
+        return filesByAccount;
+    }
+
+    private static void printSummary(List<AccountResult> results, long totalMillis) {
+        System.out.println();
+        System.out.println(String.format("%-24s %8s %10s %10s  %s", "Account", "Dateien", "Zeilen", "Dauer ms", "Status"));
+        int totalRows = 0;
+        int errors = 0;
+        for (AccountResult result : results) {
+            String status = result.error() == null ? "OK" : "FEHLER: " + result.error().getMessage();
+            System.out.println(String.format("%-24s %8d %10d %10d  %s",
+                    result.accountId(), result.files(), result.rows(), result.millis(), status));
+            totalRows += result.rows();
+            if (result.error() != null) errors++;
+        }
+        double rowsPerSecond = totalMillis > 0 ? totalRows * 1000.0 / totalMillis : totalRows;
+        System.out.println(String.format("Total: %d Zeilen in %d ms (%.0f Zeilen/s), %d von %d Accounts fehlerhaft.",
+                totalRows, totalMillis, rowsPerSecond, errors, results.size()));
+    }
+
+    public static void main(String[] args) {
+        boolean dedupe = args.length > 0 && args[0].equals("--dedupe");
+        if (args.length < (dedupe ? 2 : 1)) {
+            System.out.println("Usage: ImportOrchestrator [--dedupe] <directory|manifest>");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            Path source = Paths.get(args[dedupe ? 1 : 0]);
+            Map<String, List<Path>> filesByAccount = Files.isDirectory(source)
+                    ? scanDirectory(source)
+                    : readManifest(source);
+
+            if (filesByAccount.isEmpty()) {
+                System.out.println("Keine Dateien zum Importieren gefunden.");
+                return;
+            }
+
+            long start = System.nanoTime();
+            List<AccountResult> results = new ImportOrchestrator(context, dedupe).run(filesByAccount);
+            printSummary(results, elapsedMillis(start));
+            PipelineMetrics.writeReportIfRequested();
+            ProfilingRule.dumpIfEnabled();
+
+            for (AccountResult result : results) {
+                if (result.error() != null) {
+                    System.err.println("Fehler bei Account " + result.accountId() + ":");
+                    result.error().printStackTrace();
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Fehler während des Import-Laufs:");
+            e.printStackTrace();
+        }
+    }
+}
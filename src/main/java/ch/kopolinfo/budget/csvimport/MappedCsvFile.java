@@ -0,0 +1,263 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Memory-mapped CSV-Datei. Die Bytes liegen ausserhalb des Heaps, dekodiert wird
+ * immer nur die gerade gelesene Zeile, und auch das nur, wenn sie nicht reines ASCII ist.
+ *
+ * Für paralleles Parsen lässt sich der Inhalt nach der Kopfzeile in zeilenbündige Bereiche
+ * aufteilen (bodyRanges), die unabhängig voneinander gelesen werden können.
+ */
+public final class MappedCsvFile implements Closeable {
+
+    /**
+     * Byte-Bereich [from, to), beginnt und endet an Zeilengrenzen.
+     */
+    public record Range(int from, int to) {}
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+
+    private MappedCsvFile(FileChannel channel, MappedByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    public static MappedCsvFile open(Path filePath) throws IOException {
+        FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Datei zu gross für Memory-Mapping: " + filePath + " (" + size + " Bytes)");
+            }
+            return new MappedCsvFile(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Liefert alle Zeilen nach der Kopfzeile in Dateireihenfolge. Zeilengrenzen werden
+     * direkt auf den Bytes gesucht; reine ASCII-Zeilen kommen als ByteLine ohne Dekodierung,
+     * nur Zeilen mit anderen Zeichen werden als UTF-8 zu einem String dekodiert.
+     * Leere Zeilen werden übersprungen.
+     */
+    public Stream<CharSequence> linesWithoutHeader() {
+        return lines(body()).onClose(this::closeQuietly);
+    }
+
+    /**
+     * Liefert alle Zeilen nach der Kopfzeile von hinten nach vorne, sonst wie linesWithoutHeader().
+     * Der Speicherbedarf ist unabhängig von der Dateigrösse.
+     */
+    public Stream<CharSequence> reversedLinesWithoutHeader() {
+        return reversedLines(body()).onClose(this::closeQuietly);
+    }
+
+    /**
+     * Teilt den Inhalt nach der Kopfzeile in Bereiche von etwa targetBytes Bytes. Jede Grenze
+     * wird bis zum nächsten Zeilenanfang verschoben, keine Zeile wird also geteilt. Die Zeilen
+     * aller Bereiche hintereinander entsprechen genau linesWithoutHeader().
+     */
+    public List<Range> bodyRanges(int targetBytes) {
+        int limit = buffer.limit();
+        List<Range> ranges = new ArrayList<>();
+        int from = endOfFirstLine();
+        while (from < limit) {
+            int to = lineStartAtOrAfter((int) Math.min((long) from + Math.max(targetBytes, 1), limit));
+            ranges.add(new Range(from, to));
+            from = to;
+        }
+        return ranges;
+    }
+
+    /**
+     * Zeilen eines Bereichs in Dateireihenfolge. Schliesst die Datei nicht; verschiedene
+     * Bereiche dürfen gleichzeitig aus mehreren Threads gelesen werden.
+     */
+    public Stream<CharSequence> lines(Range range) {
+        Iterator<CharSequence> iterator = new Iterator<>() {
+            private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+            private final int limit = range.to();
+            private int start = range.from();
+            private CharSequence next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public CharSequence next() {
+                if (next == null) throw new NoSuchElementException();
+                CharSequence current = next;
+                next = advance();
+                return current;
+            }
+
+            private CharSequence advance() {
+                while (start < limit) {
+                    int lineStart = start;
+                    int lineEnd = lineStart;
+                    while (lineEnd < limit) {
+                        byte b = buffer.get(lineEnd);
+                        if (b == '\n' || b == '\r') break;
+                        lineEnd++;
+                    }
+
+                    // Zeilenende (\n, \r\n oder \r) überspringen
+                    start = lineEnd;
+                    if (start < limit && buffer.get(start) == '\r') start++;
+                    if (start < limit && buffer.get(start) == '\n') start++;
+
+                    CharSequence line = line(lineStart, lineEnd, decoder);
+                    if (line != null) return line;
+                }
+                return null;
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Zeilen eines Bereichs von hinten nach vorne, sonst wie lines(Range).
+     */
+    public Stream<CharSequence> reversedLines(Range range) {
+        Iterator<CharSequence> iterator = new Iterator<>() {
+            private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+            private final int from = range.from();
+            private int end = range.to();
+            private CharSequence next = advance();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public CharSequence next() {
+                if (next == null) throw new NoSuchElementException();
+                CharSequence current = next;
+                next = advance();
+                return current;
+            }
+
+            private CharSequence advance() {
+                while (end > from) {
+                    // Zeilenende (\n, \r\n oder \r) des aktuellen Abschnitts abschneiden
+                    int lineEnd = end;
+                    if (buffer.get(lineEnd - 1) == '\n') lineEnd--;
+                    if (lineEnd > from && buffer.get(lineEnd - 1) == '\r') lineEnd--;
+
+                    int lineStart = lineEnd;
+                    while (lineStart > from) {
+                        byte b = buffer.get(lineStart - 1);
+                        if (b == '\n' || b == '\r') break;
+                        lineStart--;
+                    }
+                    end = lineStart;
+
+                    CharSequence line = line(lineStart, lineEnd, decoder);
+                    if (line != null) return line;
+                }
+                return null;
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * ByteLine für reine ASCII-Zeilen, sonst der dekodierte String; null für leere Zeilen.
+     */
+    private CharSequence line(int from, int to, CharsetDecoder decoder) {
+        boolean ascii = true;
+        boolean blank = true;
+        for (int i = from; i < to; i++) {
+            byte b = buffer.get(i);
+            if (b < 0) {
+                ascii = false;
+                blank = false;
+                break;
+            }
+            if (blank && !Character.isWhitespace(b)) blank = false;
+        }
+        if (ascii) {
+            return blank ? null : new ByteLine(buffer, from, to - from);
+        }
+        String line = decode(from, to, decoder);
+        return line.isBlank() ? null : line;
+    }
+
+    private Range body() {
+        return new Range(endOfFirstLine(), buffer.limit());
+    }
+
+    /**
+     * Erste Position ab pos, an der eine Zeile beginnt (bei \r\n erst nach dem \n).
+     */
+    private int lineStartAtOrAfter(int pos) {
+        int limit = buffer.limit();
+        while (pos < limit) {
+            byte previous = buffer.get(pos - 1);
+            if (previous == '\n' || (previous == '\r' && buffer.get(pos) != '\n')) return pos;
+            pos++;
+        }
+        return limit;
+    }
+
+    private int endOfFirstLine() {
+        int limit = buffer.limit();
+        for (int i = 0; i < limit; i++) {
+            byte b = buffer.get(i);
+            if (b == '\n') return i + 1;
+            if (b == '\r') return (i + 1 < limit && buffer.get(i + 1) == '\n') ? i + 2 : i + 1;
+        }
+        return limit;
+    }
+
+    private String decode(int from, int to, CharsetDecoder decoder) {
+        try {
+            ByteBuffer slice = buffer.slice(from, to - from);
+            return decoder.decode(slice).toString();
+        } catch (CharacterCodingException e) {
+            throw new UncheckedIOException("Ungültige UTF-8 Zeile bei Byte " + from, e);
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,161 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import ch.kopolinfo.budget.rules.PaymentView;
+
+/**
+ * Geparste Zeilen spaltenweise in primitiven Arrays: Buchungsdatum als Epoch-Day, Betrag in
+ * Rappen. Pro Zeile entstehen so nur noch Beschreibung und Rohzeile als Objekte; LocalDate und
+ * BigDecimal erst an der JDBC-Grenze (bookingDate(i), amount(i)). Regeln lesen die Zeilen über
+ * den Flyweight Row, ohne Payment-POJO.
+ *
+ * Beträge haben wie PAYMENT.AMOUNT zwei Nachkommastellen; mehr (von Null verschiedene)
+ * Nachkommastellen werden beim Parsen abgelehnt statt gerundet.
+ *
+ * Nicht thread-safe beim Befüllen; ein fertiger Batch darf parallel gelesen werden.
+ */
+public final class RowBatch {
+    public static final int SCALE = 2;
+
+    /**
+     * Parst eine Zeile in den Batch; Zeilen ohne Buchung werden einfach nicht hinzugefügt.
+     */
+    @FunctionalInterface
+    public interface LineParser {
+        void parse(CharSequence line, RowBatch into);
+    }
+
+    private int[] epochDays;
+    private long[] amounts;
+    private String[] descriptions;
+    private String[] rawLines;
+    private int size;
+
+    public RowBatch(int capacity) {
+        int initial = Math.max(capacity, 1);
+        epochDays = new int[initial];
+        amounts = new long[initial];
+        descriptions = new String[initial];
+        rawLines = new String[initial];
+    }
+
+    /**
+     * Fasst die Zeilen eines Streams zu Batches von je batchSize Zeilen zusammen. Gelesen wird
+     * erst, wenn der nächste Batch angefordert wird; close() schliesst den Zeilen-Stream.
+     */
+    public static Stream<RowBatch> batches(Stream<CharSequence> lines, int batchSize, LineParser parser) {
+        int size = Math.max(batchSize, 1);
+        Iterator<CharSequence> iterator = lines.iterator();
+        Spliterator<RowBatch> spliterator = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+            @Override
+            public boolean tryAdvance(Consumer<? super RowBatch> action) {
+                RowBatch batch = new RowBatch(size);
+                while (batch.size() < size && iterator.hasNext()) {
+                    parser.parse(iterator.next(), batch);
+                }
+                if (batch.isEmpty()) return false;
+                action.accept(batch);
+                return true;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(lines::close);
+    }
+
+    public void add(LocalDate bookingDate, long amountCents, String description, String rawLine) {
+        add((int) bookingDate.toEpochDay(), amountCents, description, rawLine);
+    }
+
+    public void add(int epochDay, long amountCents, String description, String rawLine) {
+        if (size == epochDays.length) {
+            int capacity = size * 2;
+            epochDays = Arrays.copyOf(epochDays, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            descriptions = Arrays.copyOf(descriptions, capacity);
+            rawLines = Arrays.copyOf(rawLines, capacity);
+        }
+        epochDays[size] = epochDay;
+        amounts[size] = amountCents;
+        descriptions[size] = description;
+        rawLines[size] = rawLine;
+        size++;
+    }
+
+    /**
+     * Neuer Batch mit den Zeilen, deren Bit gesetzt ist, in unveränderter Reihenfolge.
+     */
+    public RowBatch select(BitSet rows) {
+        RowBatch selected = new RowBatch(rows.cardinality());
+        for (int i = rows.nextSetBit(0); i >= 0 && i < size; i = rows.nextSetBit(i + 1)) {
+            selected.add(epochDays[i], amounts[i], descriptions[i], rawLines[i]);
+        }
+        return selected;
+    }
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+    public int epochDay(int row) { return epochDays[row]; }
+    public long amountCents(int row) { return amounts[row]; }
+    public String description(int row) { return descriptions[row]; }
+    public String rawLine(int row) { return rawLines[row]; }
+
+    // Konvertierungen für die JDBC-Grenze
+    public LocalDate bookingDate(int row) { return LocalDate.ofEpochDay(epochDays[row]); }
+    public BigDecimal amount(int row) { return BigDecimal.valueOf(amounts[row], SCALE); }
+
+    public List<String> descriptions() {
+        return Arrays.asList(descriptions).subList(0, size);
+    }
+
+    public CsvRow toCsvRow(int row) {
+        return new CsvRow(bookingDate(row), amount(row), descriptions[row], rawLines[row]);
+    }
+
+    /**
+     * Flyweight über die Zeilen des Batches; mit at(i) auf eine Zeile setzen.
+     * Pro Thread ein eigener Row, das Objekt wird für alle Zeilen wiederverwendet.
+     */
+    public Row row(String accountId) {
+        return new Row(accountId);
+    }
+
+    public final class Row implements PaymentView {
+        private final String accountId;
+        private int index;
+
+        private Row(String accountId) {
+            this.accountId = accountId;
+        }
+
+        public Row at(int row) {
+            this.index = row;
+            return this;
+        }
+
+        @Override public String accountId() { return accountId; }
+        @Override public long amountCents() { return amounts[index]; }
+        @Override public String description() { return descriptions[index]; }
+        public int epochDay() { return epochDays[index]; }
+    }
+
+    /**
+     * Betrag in Rappen; mehr als zwei von Null verschiedene Nachkommastellen sind ein Fehler.
+     */
+    public static long toCents(BigDecimal amount) {
+        try {
+            return amount.setScale(SCALE).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Betrag " + amount.toPlainString() + " lässt sich nicht exakt in Rappen darstellen.");
+        }
+    }
+}
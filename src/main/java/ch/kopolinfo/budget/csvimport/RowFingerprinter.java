@@ -0,0 +1,159 @@
+package ch.kopolinfo.budget.csvimport;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Bildet für jede Zeile einen 64-Bit-Fingerabdruck aus Buchungsdatum, Betrag und
+ * normalisierter Beschreibung. Gleiche Zeilen (z.B. zwei identische Einkäufe am selben Tag)
+ * werden über ihre Vorkommensnummer unterschieden, so dass ein überlappender Export genau die
+ * bereits bekannten Vorkommen wiedererkennt.
+ *
+ * Die Vorkommensnummer zählt über die ganze Historie des Accounts, wie bei
+ * PaymentHashIndex.rebuild(). Ein Import ohne Dedupe zählt dafür vorher die bestehenden Zeilen
+ * derselben Buchungstage mit (countExisting); im Dedupe-Modus entsprechen die ersten Vorkommen
+ * der Datei den bestehenden und werden übersprungen, die neuen zählen von dort weiter.
+ *
+ * Zustandsbehaftet: eine Instanz pro Datei bzw. pro Account beim Neuaufbau.
+ */
+public class RowFingerprinter {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final Map<Long, Integer> occurrences = new HashMap<>();
+    private final Set<Integer> countedDays = new HashSet<>();
+
+    public List<Long> fingerprints(List<CsvRow> rows) {
+        List<Long> hashes = new ArrayList<>(rows.size());
+        for (CsvRow row : rows) {
+            hashes.add(next(row.bookingDate(), row.amount(), row.description()));
+        }
+        return hashes;
+    }
+
+    public List<Long> fingerprints(RowBatch rows) {
+        List<Long> hashes = new ArrayList<>(rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            hashes.add(next(rows.epochDay(i), rows.amountCents(i), rows.description(i)));
+        }
+        return hashes;
+    }
+
+    public long next(LocalDate bookingDate, BigDecimal amount, String description) {
+        return occurrence(contentHash(bookingDate, amount, description));
+    }
+
+    /**
+     * Wie next(LocalDate, BigDecimal, String) für Beträge in Rappen, mit identischem Ergebnis.
+     */
+    public long next(int epochDay, long amountCents, String description) {
+        return occurrence(contentHash(epochDay, amountCents, description));
+    }
+
+    /**
+     * Buchungstage des Batches, deren bestehende Zeilen noch nicht mitgezählt sind; gelten danach als gezählt.
+     */
+    public List<LocalDate> uncountedDays(RowBatch rows) {
+        List<LocalDate> days = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            if (countedDays.add(rows.epochDay(i))) {
+                days.add(rows.bookingDate(i));
+            }
+        }
+        return days;
+    }
+
+    /**
+     * Zählt eine bereits importierte Zeile mit, die nächste gleiche erhält die folgende Vorkommensnummer.
+     */
+    public void countExisting(LocalDate bookingDate, BigDecimal amount, String description) {
+        occurrences.merge(contentHash(bookingDate, amount, description), 1, Integer::sum);
+    }
+
+    private long occurrence(long content) {
+        int ordinal = occurrences.merge(content, 1, Integer::sum) - 1;
+        return mix(content + ordinal * GOLDEN_GAMMA);
+    }
+
+    static long contentHash(LocalDate bookingDate, BigDecimal amount, String description) {
+        long hash = FNV_OFFSET;
+        hash = (hash ^ bookingDate.toEpochDay()) * FNV_PRIME;
+        // 12.50 und 12.5 gelten als gleicher Betrag
+        hash = update(hash, amount.stripTrailingZeros().toPlainString());
+        return descriptionHash(hash, description);
+    }
+
+    static long contentHash(int epochDay, long amountCents, String description) {
+        if (amountCents == Long.MIN_VALUE) {
+            return contentHash(LocalDate.ofEpochDay(epochDay), BigDecimal.valueOf(amountCents, 2), description);
+        }
+        long hash = FNV_OFFSET;
+        hash = (hash ^ epochDay) * FNV_PRIME;
+        // Dieselben Zeichen wie stripTrailingZeros().toPlainString(), ohne BigDecimal und String
+        if (amountCents < 0) hash = (hash ^ '-') * FNV_PRIME;
+        long cents = Math.abs(amountCents);
+        hash = updateDigits(hash, cents / 100);
+        int fraction = (int) (cents % 100);
+        if (fraction != 0) {
+            hash = (hash ^ '.') * FNV_PRIME;
+            hash = (hash ^ ('0' + fraction / 10)) * FNV_PRIME;
+            if (fraction % 10 != 0) hash = (hash ^ ('0' + fraction % 10)) * FNV_PRIME;
+        }
+        return descriptionHash(hash, description);
+    }
+
+    private static long descriptionHash(long hash, String description) {
+        hash = (hash ^ '|') * FNV_PRIME;
+
+        // Beschreibung ohne Rand-Leerzeichen, Leerraum-Folgen als ein Leerzeichen
+        boolean pendingSpace = false;
+        boolean started = false;
+        for (int i = 0; i < description.length(); i++) {
+            char c = description.charAt(i);
+            if (Character.isWhitespace(c)) {
+                pendingSpace = started;
+                continue;
+            }
+            if (pendingSpace) {
+                hash = (hash ^ ' ') * FNV_PRIME;
+                pendingSpace = false;
+            }
+            hash = (hash ^ c) * FNV_PRIME;
+            started = true;
+        }
+        return mix(hash);
+    }
+
+    private static long updateDigits(long hash, long value) {
+        long divisor = 1;
+        while (divisor <= value / 10) divisor *= 10;
+        for (; divisor > 0; divisor /= 10) {
+            hash = (hash ^ ('0' + (int) (value / divisor % 10))) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long update(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash = (hash ^ text.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    // Finalizer aus MurmurHash3 (fmix64) für eine gute Bitverteilung
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb3fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -1,58 +1,46 @@
 package ch.kopolinfo.budget.csvimport.importer;
 
-import java.math.BigDecimal;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.util.List;
 import java.util.stream.Stream;
 
-import ch.kopolinfo.budget.csvimport.CsvRow;
+import ch.kopolinfo.budget.csvimport.ChunkedCsvParser;
+import ch.kopolinfo.budget.csvimport.CsvTokenizer;
 import ch.kopolinfo.budget.csvimport.FileImporter;
+import ch.kopolinfo.budget.csvimport.MappedCsvFile;
+import ch.kopolinfo.budget.csvimport.RowBatch;
 
 public class CembraImporter implements FileImporter {
 
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy");
-
     @Override
-    public List<CsvRow> parseFile(Path filePath) throws Exception {
-        try (Stream<String> lines = Files.lines(filePath)) {
-            List<CsvRow> rows = lines
-                .skip(1) // Header überspringen
-                .filter(line -> !line.isBlank())
-                .map(this::mapToCsvRow)
-                .toList();
-
-            // Da Cembra absteigend liefert, für die Watermark-Prüfung umkehren
-            return rows.reversed();
-        }
+    public Stream<RowBatch> streamBatches(Path filePath, int batchSize) throws Exception {
+        // Da Cembra absteigend liefert, für die Watermark-Prüfung von hinten lesen.
+        // Die Datei ist gemappt, der Header wird dabei übersprungen; grosse Dateien
+        // werden bereichsweise parallel geparst und in umgekehrter Reihenfolge zusammengesetzt.
+        return ChunkedCsvParser.batches(MappedCsvFile.open(filePath), true, batchSize, () -> {
+            CsvTokenizer tokenizer = new CsvTokenizer(',');
+            return (line, batch) -> addRow(tokenizer, line, batch);
+        });
     }
 
-    private CsvRow mapToCsvRow(String line) {
-        String[] columns = line.split(",");
+    private void addRow(CsvTokenizer tokenizer, CharSequence line, RowBatch batch) {
+        tokenizer.reset(line);
         
         // Index-Mapping basierend auf Cembra-Format:
-        // 2: Booking date, 3: Merchant, 4: Description, 5: Type, 6: Amount
-        LocalDate bookingDate = LocalDate.parse(columns[2].trim(), DATE_FORMATTER);
+        // 2: Booking date (dd-MM-yyyy), 3: Merchant, 4: Description, 5: Type, 6: Amount
+        int bookingDay = (int) tokenizer.parseDayMonthYear(2).toEpochDay();
         
-        String merchant = columns[3].trim();
-        String detail = columns[4].trim();
-        String description = detail.startsWith(merchant) ? merchant : merchant + " (" + detail + ")";
+        String merchant = tokenizer.trimmedField(3);
+        String description = tokenizer.trimmedFieldStartsWith(4, merchant)
+                ? merchant
+                : merchant + " (" + tokenizer.trimmedField(4) + ")";
         
-        BigDecimal amount = new BigDecimal(columns[6].trim());
-        String type = columns[5].trim();
+        long amount = tokenizer.parseCents(6);
         
         // Logik: Debit (Ausgabe) wird negativ, Credit (Gutschrift/Zahlung) positiv
-        if ("Debit".equalsIgnoreCase(type)) {
-            amount = amount.negate();
+        if (tokenizer.trimmedFieldEqualsIgnoreCase(5, "Debit")) {
+            amount = -amount;
         }
 
-        return new CsvRow(
-            bookingDate,
-            amount,
-            description,
-            line
-        );
+        batch.add(bookingDay, amount, description, line.toString());
     }
 }
@@ -1,55 +1,94 @@
 package ch.kopolinfo.budget.csvimport.importer;
 
-import java.math.BigDecimal;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
 
-import ch.kopolinfo.budget.csvimport.CsvRow;
+import ch.kopolinfo.budget.csvimport.ChunkedCsvParser;
+import ch.kopolinfo.budget.csvimport.CsvTokenizer;
 import ch.kopolinfo.budget.csvimport.FileImporter;
+import ch.kopolinfo.budget.csvimport.MappedCsvFile;
+import ch.kopolinfo.budget.csvimport.RowBatch;
 
 public class RaiffeisenImporter implements FileImporter {
-
-    // Format: 2026-01-05 00:00:00.0
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.S");
+    // So viele Zeilennummern übersprungener Zeilen nennt die Warnung höchstens
+    private static final int REPORTED_LINES = 5;
 
     @Override
-    public List<CsvRow> parseFile(Path filePath) throws Exception {
-        List<CsvRow> rows = new ArrayList<>();
+    public Stream<RowBatch> streamBatches(Path filePath, int batchSize) throws Exception {
+        // Zeilenweise über die gemappte Datei, Raiffeisen liefert bereits aufsteigend.
+        // Der Header (IBAN;Booked At...) wird übersprungen, leere Zeilen ebenso.
+        // Grosse Dateien werden bereichsweise parallel geparst, mit einem Tokenizer pro Bereich.
+        LongAdder skipped = new LongAdder();
+        return ChunkedCsvParser.batches(MappedCsvFile.open(filePath), false, batchSize, () -> {
+            CsvTokenizer tokenizer = new CsvTokenizer(';');
+            return (line, batch) -> addRow(tokenizer, line, batch, skipped);
+        }).onClose(() -> {
+            // Zeilen ohne Betrag gehen nicht stillschweigend verloren; gemeldet werden nur
+            // Anzahl und Zeilennummern, der Inhalt (IBAN, Buchungstext) gehört nicht ins Log
+            long count = skipped.sum();
+            if (count > 0) {
+                System.err.println("Warnung: " + count + " Zeilen ohne Betrag in " + filePath.getFileName()
+                        + " übersprungen, Zeilennummern: " + linesWithoutAmount(filePath, count));
+            }
+        });
+    }
+
+    private void addRow(CsvTokenizer tokenizer, CharSequence line, RowBatch batch, LongAdder skipped) {
+        tokenizer.reset(line);
+        
+        if (!hasAmount(tokenizer)) {
+            skipped.increment();
+            return;
+        }
+
+        // 1. Datum parsen (Format: 2026-01-05 00:00:00.0, nur der Datumsteil zählt)
+        int bookingDay = (int) tokenizer.parseIsoDate(1).toEpochDay();
         
-        // Alle Zeilen lesen
-        List<String> lines = Files.readAllLines(filePath);
+        // 2. Text extrahieren (Partner/Zweck Mischmasch)
+        String text = tokenizer.field(2);
         
-        // Header überspringen (IBAN;Booked At...)
-        for (int i = 1; i < lines.size(); i++) {
-            String line = lines.get(i);
-            if (line == null || line.isBlank()) continue;
-            
-            String[] columns = line.split(";");
-            
-            if (columns.length >= 4) {
-                // 1. Datum parsen
-                LocalDateTime dateTime = LocalDateTime.parse(columns[1], DATE_FORMATTER);
-                
-                // 2. Text extrahieren (Partner/Zweck Mischmasch)
-                String text = columns[2];
-                
-                // 3. Betrag
-                BigDecimal amount = new BigDecimal(columns[3]);
-                
-                // CsvRow erstellen
-                rows.add(new CsvRow(
-                    dateTime.toLocalDate(), // bookingDate
-                    amount,                 // amount
-                    text,                   // initial identisch mit Text
-                    line                    // rawLine
-                ));
+        // 3. Betrag in Rappen
+        long amount = tokenizer.parseCents(3);
+        
+        batch.add(bookingDay, amount, text, line.toString());
+    }
+
+    private static boolean hasAmount(CsvTokenizer tokenizer) {
+        return tokenizer.fieldCount() >= 4 && !tokenizer.isEmpty(3);
+    }
+
+    /**
+     * Zeilennummern (Kopfzeile = 1) der ersten übersprungenen Zeilen. Die parallelen Parser
+     * kennen die Position einer Zeile nicht, daher ein zweiter, sequentieller Durchlauf;
+     * er läuft nur, wenn etwas übersprungen wurde, und endet nach REPORTED_LINES Treffern.
+     */
+    private static String linesWithoutAmount(Path filePath, long count) {
+        StringJoiner numbers = new StringJoiner(", ");
+        CsvTokenizer tokenizer = new CsvTokenizer(';');
+        int found = 0;
+        try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8)) {
+            reader.readLine();
+            int lineNumber = 1;
+            String line;
+            while (found < Math.min(count, REPORTED_LINES) && (line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isEmpty()) continue;
+                tokenizer.reset(line);
+                if (!hasAmount(tokenizer)) {
+                    numbers.add(Integer.toString(lineNumber));
+                    found++;
+                }
             }
+        } catch (IOException | UncheckedIOException e) {
+            return "Nummern nicht ermittelbar: " + e.getMessage();
         }
-        
-        return rows;
+        return count > found ? numbers + ", ..." : numbers.toString();
     }
 }
@@ -1,88 +1,180 @@
 package ch.kopolinfo.budget.db;
 
-import static ch.kopolinfo.budget.model.jooq.Tables.ACCOUNT;
-import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY;
-import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY_GROUP;
-import static ch.kopolinfo.budget.model.jooq.Tables.CURRENCY;
 import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
 
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.SQLException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.LocalDate;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.Collection;
 
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.jooq.DSLContext;
+import org.jooq.SQLDialect;
+import org.jooq.conf.Settings;
+import org.jooq.conf.StatementType;
 import org.jooq.impl.DSL;
+import org.jooq.impl.DefaultConfiguration;
+import org.jooq.impl.DefaultExecuteListenerProvider;
 
 import ch.kopolinfo.budget.csvimport.FileImporter;
 import ch.kopolinfo.budget.csvimport.importer.CembraImporter;
 import ch.kopolinfo.budget.csvimport.importer.RaiffeisenImporter;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.metrics.StatementMetrics;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Account;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Category;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.CategoryGroup;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Currency;
 
+/**
+ * Zentraler Zugriff auf DB und Stammdaten. Die Verbindung lässt sich über System-Properties
+ * anpassen, ohne DB_URL zu ändern:
+ * budget.db.url, budget.db.poolSize, budget.db.cacheSize (KB), budget.db.lockMode,
+ * budget.db.lockTimeout (ms) und budget.db.queryCacheSize (vorbereitete Statements pro Session).
+ * Alle Statements werden in PipelineMetrics erfasst.
+ *
+ * Die Stammdaten werden erst beim ersten Zugriff geladen, über einen MetadataSnapshot in der
+ * Datei budget.metadata.snapshot (Standard im Temp-Verzeichnis, leer schaltet ihn ab).
+ */
 public class AppDataContext implements AutoCloseable {
     private static final String DB_URL = "jdbc:h2:file:N:/Privat/Investitionen/Budget/budget;AUTO_SERVER=TRUE";
     private static final String DB_USER = "";
     private static final String DB_PASSWORD = "";
 
-    private final Connection connection;
+    private static final int DEFAULT_POOL_SIZE = 4;
+    // H2 hält pro Session nur 8 geparste Statements, für Import und Regeln reicht das nicht
+    private static final int DEFAULT_QUERY_CACHE_SIZE = 64;
+
+    private final JdbcConnectionPool pool;
     private final DSLContext dsl;
 
-    private Map<String, Account> accounts;
-    private Map<String, Category> categories;
-    private Map<String, CategoryGroup> categoryGroups;
-    private Map<String, Currency> currencies;
+    private final String databaseUrl;
+    private volatile MetadataSnapshot metadata;
 
     public AppDataContext() throws Exception {
         // Initialisierung der finalen Member
-        this.connection = DriverManager.getConnection(DB_URL, DB_USER, DB_PASSWORD);
-        this.dsl = DSL.using(connection);
+        this.databaseUrl = databaseUrl();
+        this.pool = JdbcConnectionPool.create(databaseUrl, DB_USER, DB_PASSWORD);
+        this.pool.setMaxConnections(Integer.getInteger("budget.db.poolSize", DEFAULT_POOL_SIZE));
+        this.dsl = DSL.using(new DefaultConfiguration()
+                .set(pool)
+                .set(SQLDialect.H2)
+                .set(settings())
+                .set(new DefaultExecuteListenerProvider(new StatementMetrics(PipelineMetrics.global()))));
         
         // jOOQ-Logo unterdrücken (optional, falls gewünscht)
         System.setProperty("org.jooq.no-logo", "true");
 
-        loadMetadata();
+        ensureSideTables();
+    }
+
+    /**
+     * DB_URL bzw. budget.db.url, ergänzt um die konfigurierten H2-Einstellungen.
+     * LAZY_QUERY_EXECUTION ist immer an: ohne baut H2 eingebettet jedes Resultat vollständig
+     * auf und ignoriert fetchSize, die Cursor in RulesApplier, ColumnarLedger und den
+     * Seitentabellen würden also nicht streamen.
+     */
+    private static String databaseUrl() {
+        StringBuilder url = new StringBuilder(System.getProperty("budget.db.url", DB_URL));
+        url.append(";QUERY_CACHE_SIZE=").append(Integer.getInteger("budget.db.queryCacheSize", DEFAULT_QUERY_CACHE_SIZE));
+        url.append(";LAZY_QUERY_EXECUTION=1");
+        appendSetting(url, "CACHE_SIZE", "budget.db.cacheSize");
+        appendSetting(url, "LOCK_MODE", "budget.db.lockMode");
+        appendSetting(url, "LOCK_TIMEOUT", "budget.db.lockTimeout");
+        return url.toString();
+    }
+
+    private static void appendSetting(StringBuilder url, String setting, String property) {
+        String value = System.getProperty(property);
+        if (value != null && !value.isBlank()) {
+            url.append(';').append(setting).append('=').append(value.trim());
+        }
+    }
+
+    /**
+     * Prepared Statements mit Bind-Werten, damit H2 geparste Statements pro Session
+     * wiederverwenden kann. IN-Listen werden auf Zweierpotenzen aufgefüllt, so entstehen
+     * bei wechselnden Listenlängen nur wenige verschiedene SQL-Texte.
+     */
+    private static Settings settings() {
+        return new Settings()
+                .withStatementType(StatementType.PREPARED_STATEMENT)
+                .withInListPadding(true)
+                .withInListPadBase(2)
+                .withRenderSchema(false)
+                .withCacheRecordMappers(true)
+                .withReflectionCaching(true);
     }
 
     @Override
     public void close() {
-        if (connection != null) {
-            try {
-				connection.close();
-			} catch (SQLException e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
+        if (pool != null) {
+            pool.dispose();
         }
     }
     
     public DSLContext getDsl() {
         return dsl;
     }
-    
-	private void loadMetadata() {
-        currencies = dsl.selectFrom(CURRENCY).fetchInto(Currency.class)
-                .stream().collect(Collectors.toMap(Currency::getCurrencyCode, c -> c));
 
-        accounts = dsl.selectFrom(ACCOUNT).fetchInto(Account.class)
-                .stream().collect(Collectors.toMap(Account::getId, a -> a));
+    /**
+     * Maximale Anzahl gleichzeitig offener Verbindungen (budget.db.poolSize).
+     */
+    public int getPoolSize() {
+        return pool.getMaxConnections();
+    }
+    
+    private MetadataSnapshot metadata() {
+        MetadataSnapshot current = metadata;
+        if (current == null) {
+            synchronized (this) {
+                current = metadata;
+                if (current == null) {
+                    current = MetadataSnapshot.load(dsl, snapshotFile());
+                    metadata = current;
+                }
+            }
+        }
+        return current;
+    }
 
-        categoryGroups = dsl.selectFrom(CATEGORY_GROUP).fetchInto(CategoryGroup.class)
-                .stream().collect(Collectors.toMap(CategoryGroup::getId, g -> g));
+    /**
+     * Eine Snapshot-Datei pro DB-URL, damit sich Test- und Produktiv-DB nicht in die Quere kommen.
+     */
+    private Path snapshotFile() {
+        String file = System.getProperty("budget.metadata.snapshot");
+        if (file == null) {
+            return Paths.get(System.getProperty("java.io.tmpdir"),
+                    "budget-metadata-" + Integer.toHexString(databaseUrl.hashCode()) + ".snapshot");
+        }
+        return file.isBlank() ? null : Paths.get(file);
+    }
+	
+    /**
+     * Seitentabellen, die nicht Teil des generierten jOOQ-Modells sind, bei Bedarf anlegen.
+     */
+    private void ensureSideTables() {
+        DescriptionIndex.createIfMissing(dsl);
+        PaymentHashIndex.createIfMissing(dsl);
+        TransactionAllocation.createIfMissing(dsl);
+        MonthlyAggregate.createIfMissing(dsl);
+        ImportStaging.createIfMissing(dsl);
+        MetadataVersion.createIfMissing(dsl);
+    }
 
-        categories = dsl.selectFrom(CATEGORY).fetchInto(Category.class)
-                .stream().collect(Collectors.toMap(Category::getId, c -> c));
-	}
+    static boolean tableExists(DSLContext dsl, String tableName) {
+        return dsl.fetchExists(DSL.selectOne()
+                // Plain SQL, da withRenderSchema(false) auch das Schema INFORMATION_SCHEMA weglassen würde
+                .from(DSL.table("INFORMATION_SCHEMA.TABLES"))
+                .where(DSL.field(DSL.name("TABLE_SCHEMA")).eq("PUBLIC"))
+                .and(DSL.field(DSL.name("TABLE_NAME")).eq(tableName)));
+    }
 	
     /**
      * Factory-Methode, die basierend auf der Account-ID den passenden Importer zurückgibt.
      */
     public FileImporter getImporter(String accountId) {
-        if (!accounts.containsKey(accountId)) {
+        if (!metadata().accounts().containsKey(accountId)) {
             throw new IllegalArgumentException("Account mit ID '" + accountId + "' existiert nicht in der Datenbank.");
         }
 
@@ -95,20 +187,26 @@ public class AppDataContext implements AutoCloseable {
     }
 
     // Getter
-    public Account getAccount(String id) { return accounts.get(id); }
-    public CategoryGroup getCategoryGroup(String id) { return categoryGroups.get(id); }
-    public Category getCategory(String id) { return categories.get(id); }
-    public Currency getCurrency(String code) { return currencies.get(code); }
+    public Account getAccount(String id) { return metadata().accounts().get(id); }
+    public CategoryGroup getCategoryGroup(String id) { return metadata().categoryGroups().get(id); }
+    public Category getCategory(String id) { return metadata().categories().get(id); }
+    public Currency getCurrency(String code) { return metadata().currencies().get(code); }
+    public Collection<Account> getAccounts() { return metadata().accounts().values(); }
+    public Collection<Category> getCategories() { return metadata().categories().values(); }
     
-    // Hilfsmethode für den Importer-Service (Suche der "Nicht zugeordnet"-Kategorie)
+    // Hilfsmethode für den Importer-Service ("Nicht zugeordnet"-Kategorie, beim Laden bestimmt)
     public Category getUnassignedCategory() {
-        return categories.values().stream()
-                .filter(c -> c.getId().equals("UNASSIGNED"))
-                .findFirst()
-                .orElse(null);
+        return metadata().unassignedCategory();
     }
 
     public LocalDate getLastBookingDate(String accountId) {
+        return getLastBookingDate(dsl, accountId);
+    }
+
+    /**
+     * Variante für laufende Transaktionen, die auch eigene, noch nicht committete Payments sieht.
+     */
+    public LocalDate getLastBookingDate(DSLContext dsl, String accountId) {
         // Falls die Payments nicht alle im Speicher sind, fragen wir jOOQ direkt
         return dsl.select(DSL.max(PAYMENT.BOOKING_DATE))
                   .from(PAYMENT)
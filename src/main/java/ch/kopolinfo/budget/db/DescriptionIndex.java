@@ -0,0 +1,253 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record1;
+import org.jooq.Record2;
+import org.jooq.Result;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+
+/**
+ * Invertierter Index über PAYMENT.DESCRIPTION in der Seitentabelle PAYMENT_TOKEN.
+ * Jede Beschreibung wird in Trigramme (3 Zeichen, in Grossbuchstaben) zerlegt.
+ * "Beschreibung enthält X" wird damit zu einem Index-Lookup auf die Trigramme von X;
+ * nur die so gefundenen Kandidaten werden noch exakt (und case-sensitiv) geprüft.
+ *
+ * Imports tragen neue Payments nur in PAYMENT_TOKEN_PENDING ein (eine schmale Zeile statt
+ * rund 50 Trigrammen pro Payment in der Import-Transaktion). Wer den Index abfragt, ruft
+ * vorher catchUp() auf; das zerlegt die wartenden Payments in einer eigenen Transaktion.
+ * FileDeleter entfernt Einträge beider Tabellen in seiner Transaktion.
+ */
+public final class DescriptionIndex {
+    static final int TOKEN_LENGTH = 3;
+    // Zeilen pro Multi-Row-Insert in die Indextabelle
+    private static final int INSERT_CHUNK = 5000;
+
+    static final Table<Record> PAYMENT_TOKEN = DSL.table(DSL.name("PAYMENT_TOKEN"));
+    static final Field<String> TOKEN = DSL.field(DSL.name("PAYMENT_TOKEN", "TOKEN"), SQLDataType.VARCHAR(TOKEN_LENGTH));
+    static final Field<Integer> PAYMENT_ID = DSL.field(DSL.name("PAYMENT_TOKEN", "PAYMENT_ID"), SQLDataType.INTEGER);
+
+    static final Table<Record> PAYMENT_TOKEN_PENDING = DSL.table(DSL.name("PAYMENT_TOKEN_PENDING"));
+    static final Field<Integer> PENDING_PAYMENT_ID = DSL.field(DSL.name("PAYMENT_TOKEN_PENDING", "PAYMENT_ID"), SQLDataType.INTEGER);
+
+    private DescriptionIndex() {}
+
+    /**
+     * Legt die Indextabelle an, falls sie fehlt, und füllt sie in diesem Fall aus PAYMENT.
+     */
+    static void createIfMissing(DSLContext dsl) {
+        if (!AppDataContext.tableExists(dsl, PAYMENT_TOKEN_PENDING.getName())) {
+            dsl.createTableIfNotExists(PAYMENT_TOKEN_PENDING)
+                    .column(DSL.name("PAYMENT_ID"), SQLDataType.INTEGER.notNull())
+                    .constraints(DSL.primaryKey(DSL.name("PAYMENT_ID")))
+                    .execute();
+        }
+        if (AppDataContext.tableExists(dsl, PAYMENT_TOKEN.getName())) return;
+
+        dsl.createTableIfNotExists(PAYMENT_TOKEN)
+                .column(DSL.name("TOKEN"), SQLDataType.VARCHAR(TOKEN_LENGTH).notNull())
+                .column(DSL.name("PAYMENT_ID"), SQLDataType.INTEGER.notNull())
+                .constraints(DSL.primaryKey(DSL.name("TOKEN"), DSL.name("PAYMENT_ID")))
+                .execute();
+        dsl.createIndexIfNotExists(DSL.name("PAYMENT_TOKEN_PAYMENT_IDX"))
+                .on(PAYMENT_TOKEN, DSL.field(DSL.name("PAYMENT_ID")))
+                .execute();
+
+        System.out.println("Beschreibungs-Index angelegt, indexiere bestehende Payments...");
+        System.out.println(rebuild(dsl) + " Payments indexiert.");
+    }
+
+    /**
+     * Normalisierte, eindeutige Trigramme eines Textes in Reihenfolge des Auftretens.
+     */
+    public static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null || text.length() < TOKEN_LENGTH) return tokens;
+
+        char[] normalized = new char[text.length()];
+        for (int i = 0; i < normalized.length; i++) {
+            normalized[i] = Character.toUpperCase(text.charAt(i));
+        }
+        for (int i = 0; i + TOKEN_LENGTH <= normalized.length; i++) {
+            tokens.add(new String(normalized, i, TOKEN_LENGTH));
+        }
+        return tokens;
+    }
+
+    /**
+     * Merkt neu eingefügte Payments für catchUp() vor; in der Transaktion des Imports aufrufen.
+     */
+    public static void enqueue(DSLContext txDsl, List<Integer> paymentIds) {
+        for (int from = 0; from < paymentIds.size(); from += INSERT_CHUNK) {
+            var insert = txDsl.insertInto(PAYMENT_TOKEN_PENDING, PENDING_PAYMENT_ID);
+            for (Integer paymentId : paymentIds.subList(from, Math.min(from + INSERT_CHUNK, paymentIds.size()))) {
+                insert = insert.values(paymentId);
+            }
+            insert.execute();
+        }
+    }
+
+    /**
+     * Wie enqueue(), für alle Payments, die die Abfrage liefert (INSERT ... SELECT).
+     */
+    public static void enqueue(DSLContext txDsl, Select<Record1<Integer>> paymentIds) {
+        txDsl.insertInto(PAYMENT_TOKEN_PENDING, PENDING_PAYMENT_ID).select(paymentIds).execute();
+    }
+
+    /**
+     * Indexiert alle vorgemerkten Payments, chunkweise in je einer eigenen Transaktion.
+     * Vor jeder Abfrage über containing() aufrufen.
+     * @return Anzahl indexierter Payments
+     */
+    public static int catchUp(DSLContext dsl) {
+        int count = 0;
+        while (true) {
+            int indexed = dsl.transactionResult(configuration -> {
+                DSLContext txDsl = configuration.dsl();
+                Result<Record2<Integer, String>> pending = txDsl.select(PAYMENT.PAYMENT_ID, PAYMENT.DESCRIPTION)
+                        .from(PAYMENT_TOKEN_PENDING)
+                        .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(PENDING_PAYMENT_ID))
+                        .orderBy(PENDING_PAYMENT_ID)
+                        .limit(INSERT_CHUNK)
+                        .fetch();
+                if (pending.isEmpty()) {
+                    // Vorgemerkte, inzwischen gelöschte Payments
+                    txDsl.deleteFrom(PAYMENT_TOKEN_PENDING)
+                            .whereNotExists(DSL.selectOne().from(PAYMENT).where(PAYMENT.PAYMENT_ID.eq(PENDING_PAYMENT_ID)))
+                            .execute();
+                    return 0;
+                }
+                List<Integer> ids = pending.getValues(PAYMENT.PAYMENT_ID);
+                index(txDsl, ids, pending.getValues(PAYMENT.DESCRIPTION));
+                txDsl.deleteFrom(PAYMENT_TOKEN_PENDING).where(PENDING_PAYMENT_ID.in(ids)).execute();
+                return ids.size();
+            });
+            if (indexed == 0) return count;
+            count += indexed;
+        }
+    }
+
+    private static void index(DSLContext txDsl, List<Integer> paymentIds, List<String> descriptions) {
+        var insert = txDsl.insertInto(PAYMENT_TOKEN, TOKEN, PAYMENT_ID);
+        int pending = 0;
+        for (int i = 0; i < paymentIds.size(); i++) {
+            for (String token : tokens(descriptions.get(i))) {
+                insert = insert.values(token, paymentIds.get(i));
+                if (++pending == INSERT_CHUNK) {
+                    insert.execute();
+                    insert = txDsl.insertInto(PAYMENT_TOKEN, TOKEN, PAYMENT_ID);
+                    pending = 0;
+                }
+            }
+        }
+        if (pending > 0) {
+            insert.execute();
+        }
+    }
+
+    /**
+     * Entfernt die Indexeinträge der Payments, die die Bedingung auf PAYMENT erfüllen.
+     */
+    public static int remove(DSLContext txDsl, Condition paymentCondition) {
+        txDsl.deleteFrom(PAYMENT_TOKEN_PENDING)
+                .where(PENDING_PAYMENT_ID.in(DSL.select(PAYMENT.PAYMENT_ID).from(PAYMENT).where(paymentCondition)))
+                .execute();
+        return txDsl.deleteFrom(PAYMENT_TOKEN)
+                .where(PAYMENT_ID.in(DSL.select(PAYMENT.PAYMENT_ID).from(PAYMENT).where(paymentCondition)))
+                .execute();
+    }
+
+    /**
+     * Bedingung auf PAYMENT für "Beschreibung enthält text" (case-sensitiv wie String.contains).
+     * Texte kürzer als ein Trigramm lassen sich nicht über den Index eingrenzen.
+     * Setzt einen nachgeführten Index voraus (catchUp()).
+     */
+    public static Condition containing(String text) {
+        Set<String> tokens = tokens(text);
+        if (tokens.isEmpty()) {
+            return PAYMENT.DESCRIPTION.contains(text);
+        }
+        return PAYMENT.PAYMENT_ID.in(DSL.select(PAYMENT_ID)
+                        .from(PAYMENT_TOKEN)
+                        .where(TOKEN.in(tokens))
+                        .groupBy(PAYMENT_ID)
+                        .having(DSL.count().eq(tokens.size())))
+                .and(PAYMENT.DESCRIPTION.contains(text));
+    }
+
+    /**
+     * Baut den Index vollständig aus PAYMENT neu auf.
+     * @return Anzahl indexierter Payments
+     */
+    public static int rebuild(DSLContext dsl) {
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = configuration.dsl();
+            txDsl.deleteFrom(PAYMENT_TOKEN).execute();
+            txDsl.deleteFrom(PAYMENT_TOKEN_PENDING).execute();
+
+            int count = 0;
+            List<Integer> ids = new ArrayList<>();
+            List<String> descriptions = new ArrayList<>();
+            try (Cursor<Record2<Integer, String>> cursor = txDsl.select(PAYMENT.PAYMENT_ID, PAYMENT.DESCRIPTION)
+                    .from(PAYMENT)
+                    .fetchSize(INSERT_CHUNK)
+                    .fetchLazy()) {
+                for (Record2<Integer, String> record : cursor) {
+                    ids.add(record.value1());
+                    descriptions.add(record.value2());
+                    if (ids.size() == INSERT_CHUNK) {
+                        index(txDsl, ids, descriptions);
+                        count += ids.size();
+                        ids.clear();
+                        descriptions.clear();
+                    }
+                }
+            }
+            index(txDsl, ids, descriptions);
+            return count + ids.size();
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || (args[0].equals("search") && args.length < 2)) {
+            System.out.println("Usage: DescriptionIndex rebuild | search <text>");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            DSLContext dsl = context.getDsl();
+            if (args[0].equals("rebuild")) {
+                System.out.println(rebuild(dsl) + " Payments indexiert.");
+            } else {
+                catchUp(dsl);
+                List<Payment> payments = dsl.selectFrom(PAYMENT)
+                        .where(containing(args[1]))
+                        .orderBy(PAYMENT.BOOKING_DATE, PAYMENT.PAYMENT_ID)
+                        .fetchInto(Payment.class);
+                for (Payment payment : payments) {
+                    System.out.println(payment.getBookingDate() + "  " + payment.getAccountId() + "  "
+                            + payment.getAmount() + "  " + payment.getDescription());
+                }
+                System.out.println(payments.size() + " Treffer.");
+            }
+        } catch (Exception e) {
+            System.err.println("Fehler beim Zugriff auf den Beschreibungs-Index:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.IMPORT_ENTRY;
+import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
+import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record3;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+import ch.kopolinfo.budget.csvimport.RowBatch;
+
+/**
+ * Zwischenablage für zweiphasige Imports (siehe CSVImporter.importFileStaged). Geparste, klassifizierte
+ * Zeilen samt Fingerabdruck werden ausserhalb jeder langen Transaktion in IMPORT_STAGING
+ * geschrieben; publish() übernimmt sie danach mit wenigen INSERT ... SELECT in einer kurzen
+ * Transaktion. Den Beschreibungs-Index baut DescriptionIndex.catchUp() später nach.
+ *
+ * Die Tabelle ist CACHED wie die übrigen: eine ganze Datei im Speicher des H2-Servers zu halten
+ * würde dessen Heap sprengen. clear() entfernt die Zeilen eines Imports danach wieder; was ein
+ * abgestürzter Import liegen lässt, räumt createIfMissing() nach einem Tag weg. Parallele
+ * Imports unterscheiden sich über STAGE_ID.
+ */
+public final class ImportStaging {
+    static final Table<Record> IMPORT_STAGING = DSL.table(DSL.name("IMPORT_STAGING"));
+    static final Field<Long> STAGE_ID = DSL.field(DSL.name("IMPORT_STAGING", "STAGE_ID"), SQLDataType.BIGINT);
+    static final Field<Integer> ROW_NO = DSL.field(DSL.name("IMPORT_STAGING", "ROW_NO"), SQLDataType.INTEGER);
+    static final Field<LocalDate> BOOKING_DATE = DSL.field(DSL.name("IMPORT_STAGING", "BOOKING_DATE"), SQLDataType.LOCALDATE);
+    static final Field<BigDecimal> AMOUNT = DSL.field(DSL.name("IMPORT_STAGING", "AMOUNT"), SQLDataType.DECIMAL);
+    static final Field<String> DESCRIPTION = DSL.field(DSL.name("IMPORT_STAGING", "DESCRIPTION"), SQLDataType.VARCHAR);
+    static final Field<String> RAW_CSV_LINE = DSL.field(DSL.name("IMPORT_STAGING", "RAW_CSV_LINE"), SQLDataType.VARCHAR);
+    static final Field<Long> ROW_HASH = DSL.field(DSL.name("IMPORT_STAGING", "ROW_HASH"), SQLDataType.BIGINT);
+    static final Field<String> CATEGORY_ID = DSL.field(DSL.name("IMPORT_STAGING", "CATEGORY_ID"), SQLDataType.VARCHAR);
+    static final Field<Integer> PAYMENT_ID = DSL.field(DSL.name("IMPORT_STAGING", "PAYMENT_ID"), SQLDataType.INTEGER);
+    static final Field<LocalDateTime> STAGED_AT = DSL.field(DSL.name("IMPORT_STAGING", "STAGED_AT"), SQLDataType.LOCALDATETIME);
+
+    // Kein Import dauert so lange, ältere Zeilen stammen von einem abgebrochenen Lauf
+    private static final Duration ABANDONED_AFTER = Duration.ofDays(1);
+
+    private ImportStaging() {}
+
+    /**
+     * Ergebnis von publish(): Anzahl übernommener Zeilen und der dabei übersprungenen,
+     * weil ein paralleler Import sie inzwischen schon erfasst hat (nur im Dedupe-Modus).
+     */
+    public record Published(int rows, int skipped) {}
+
+    static void createIfMissing(DSLContext dsl) {
+        if (AppDataContext.tableExists(dsl, IMPORT_STAGING.getName())) {
+            dsl.deleteFrom(IMPORT_STAGING)
+                    .where(STAGED_AT.lt(LocalDateTime.now().minus(ABANDONED_AFTER)))
+                    .execute();
+            return;
+        }
+
+        // jOOQ kennt CACHED nicht, daher Plain SQL
+        dsl.execute("CREATE CACHED TABLE IF NOT EXISTS IMPORT_STAGING ("
+                + "STAGE_ID BIGINT NOT NULL, ROW_NO INT NOT NULL, BOOKING_DATE DATE NOT NULL, "
+                + "AMOUNT DECIMAL(15,2) NOT NULL, DESCRIPTION VARCHAR, RAW_CSV_LINE VARCHAR, "
+                + "ROW_HASH BIGINT NOT NULL, CATEGORY_ID VARCHAR(64), PAYMENT_ID INT, "
+                + "STAGED_AT TIMESTAMP DEFAULT LOCALTIMESTAMP NOT NULL, "
+                + "PRIMARY KEY (STAGE_ID, ROW_NO))");
+    }
+
+    /**
+     * Schreibt einen Batch (Autocommit, eine Transaktion pro Statement).
+     * @param firstRowNo ROW_NO der ersten Zeile; über alle Batches eines Imports lückenlos
+     */
+    public static void stage(DSLContext dsl, long stageId, int firstRowNo, RowBatch rows, List<Long> hashes,
+            List<Optional<String>> categories) {
+        if (rows.isEmpty()) return;
+
+        var insert = dsl.insertInto(IMPORT_STAGING,
+                STAGE_ID, ROW_NO, BOOKING_DATE, AMOUNT, DESCRIPTION, RAW_CSV_LINE, ROW_HASH, CATEGORY_ID);
+        for (int i = 0; i < rows.size(); i++) {
+            insert = insert.values(stageId, firstRowNo + i, rows.bookingDate(i), rows.amount(i), rows.description(i),
+                    rows.rawLine(i), hashes.get(i), categories.get(i).orElse(null));
+        }
+        insert.execute();
+    }
+
+    /**
+     * Übernimmt die abgelegten Zeilen in PAYMENT, TRANSACTION, IMPORT_ENTRY sowie die
+     * Seitentabellen; in der Transaktion von txDsl aufrufen. Jede Tabelle kostet ein
+     * INSERT ... SELECT, unabhängig von der Anzahl Zeilen.
+     *
+     * PAYMENT_IDs werden in ROW_NO-Reihenfolge vergeben. Sind sie lückenlos (der Normalfall),
+     * ergibt sich die ID direkt aus ROW_NO; sonst wird sie einmal in IMPORT_STAGING nachgetragen.
+     */
+    public static Published publish(DSLContext txDsl, long stageId, String accountId, int importId, String unassignedId,
+            boolean dedupe) {
+        // Im Dedupe-Modus fällt weg, was ein paralleler Import seit dem Ablegen erfasst hat
+        int skipped = !dedupe ? 0 : txDsl.deleteFrom(IMPORT_STAGING)
+                .where(STAGE_ID.eq(stageId))
+                .and(ROW_HASH.in(DSL.select(PaymentHashIndex.ROW_HASH)
+                        .from(PaymentHashIndex.PAYMENT_HASH)
+                        .where(PaymentHashIndex.ACCOUNT_ID.eq(accountId))))
+                .execute();
+
+        var paymentInsert = txDsl.insertInto(PAYMENT,
+                        PAYMENT.ACCOUNT_ID, PAYMENT.BOOKING_DATE, PAYMENT.AMOUNT, PAYMENT.DESCRIPTION, PAYMENT.RAW_CSV_LINE)
+                .select(DSL.select(DSL.val(accountId), BOOKING_DATE, AMOUNT, DESCRIPTION, RAW_CSV_LINE)
+                        .from(IMPORT_STAGING)
+                        .where(STAGE_ID.eq(stageId))
+                        .orderBy(ROW_NO));
+        // FINAL TABLE liefert die vergebenen IDs, ohne sie einzeln zum Client zu holen
+        Field<Integer> insertedId = DSL.field(DSL.name("PAYMENT_ID"), SQLDataType.INTEGER);
+        Record3<Integer, Integer, Integer> inserted = txDsl
+                .select(DSL.min(insertedId), DSL.max(insertedId), DSL.count())
+                .from(DSL.table("FINAL TABLE ({0})", paymentInsert))
+                .fetchOne();
+        int rows = inserted.value3();
+        if (rows == 0) return new Published(0, skipped);
+
+        int firstId = inserted.value1();
+        Field<Integer> paymentId;
+        if (skipped == 0 && inserted.value2() - firstId + 1 == rows) {
+            paymentId = DSL.val(firstId).plus(ROW_NO);
+        } else {
+            assignPaymentIds(txDsl, stageId, accountId, firstId, inserted.value2(), rows);
+            paymentId = PAYMENT_ID;
+        }
+
+        txDsl.insertInto(TRANSACTION,
+                        TRANSACTION.PAYMENT_ID, TRANSACTION.CATEGORY_ID, TRANSACTION.AMOUNT,
+                        TRANSACTION.VALID_FROM, TRANSACTION.VALID_TO, TRANSACTION.DESCRIPTION)
+                .select(DSL.select(paymentId, DSL.coalesce(CATEGORY_ID, DSL.val(unassignedId)), AMOUNT,
+                                BOOKING_DATE, BOOKING_DATE, DESCRIPTION)
+                        .from(IMPORT_STAGING)
+                        .where(STAGE_ID.eq(stageId))
+                        .orderBy(ROW_NO))
+                .execute();
+
+        txDsl.insertInto(IMPORT_ENTRY, IMPORT_ENTRY.IMPORT_ID, IMPORT_ENTRY.PAYMENT_ID)
+                .select(DSL.select(DSL.val(importId), paymentId)
+                        .from(IMPORT_STAGING)
+                        .where(STAGE_ID.eq(stageId)))
+                .execute();
+
+        txDsl.insertInto(PaymentHashIndex.PAYMENT_HASH,
+                        PaymentHashIndex.ACCOUNT_ID, PaymentHashIndex.ROW_HASH, PaymentHashIndex.PAYMENT_ID)
+                .select(DSL.select(DSL.val(accountId), ROW_HASH, paymentId)
+                        .from(IMPORT_STAGING)
+                        .where(STAGE_ID.eq(stageId)))
+                .execute();
+
+        DescriptionIndex.enqueue(txDsl, DSL.select(paymentId)
+                .from(IMPORT_STAGING)
+                .where(STAGE_ID.eq(stageId)));
+
+        MonthlyAggregate.add(txDsl, TRANSACTION.PAYMENT_ID.in(DSL.select(IMPORT_ENTRY.PAYMENT_ID)
+                .from(IMPORT_ENTRY)
+                .where(IMPORT_ENTRY.IMPORT_ID.eq(importId))));
+
+        return new Published(rows, skipped);
+    }
+
+    /**
+     * Rückfallpfad bei Lücken: die neuen Payments sind die IDs im vergebenen Bereich, die noch
+     * keinem Import zugeordnet sind; aufsteigend entsprechen sie den Zeilen in ROW_NO-Reihenfolge.
+     */
+    private static void assignPaymentIds(DSLContext txDsl, long stageId, String accountId, int minId, int maxId, int rows) {
+        List<Integer> paymentIds = txDsl.select(PAYMENT.PAYMENT_ID)
+                .from(PAYMENT)
+                .where(PAYMENT.PAYMENT_ID.between(minId, maxId))
+                .and(PAYMENT.ACCOUNT_ID.eq(accountId))
+                .andNotExists(DSL.selectOne().from(IMPORT_ENTRY).where(IMPORT_ENTRY.PAYMENT_ID.eq(PAYMENT.PAYMENT_ID)))
+                .orderBy(PAYMENT.PAYMENT_ID)
+                .fetch(PAYMENT.PAYMENT_ID);
+        List<Integer> rowNos = txDsl.select(ROW_NO)
+                .from(IMPORT_STAGING)
+                .where(STAGE_ID.eq(stageId))
+                .orderBy(ROW_NO)
+                .fetch(ROW_NO);
+        if (paymentIds.size() != rows || rowNos.size() != rows) {
+            throw new IllegalStateException(
+                String.format("Zuordnung der PAYMENT_IDs fehlgeschlagen: %d IDs für %d Zeilen.", paymentIds.size(), rows));
+        }
+
+        var batch = txDsl.batch(txDsl.update(IMPORT_STAGING)
+                .set(PAYMENT_ID, (Integer) null)
+                .where(STAGE_ID.eq((Long) null))
+                .and(ROW_NO.eq((Integer) null)));
+        for (int i = 0; i < rows; i++) {
+            batch.bind(paymentIds.get(i), stageId, rowNos.get(i));
+        }
+        batch.execute();
+    }
+
+    /**
+     * Entfernt alle Zeilen eines Imports, nach dem Publizieren wie nach einem Fehler.
+     */
+    public static void clear(DSLContext dsl, long stageId) {
+        dsl.deleteFrom(IMPORT_STAGING).where(STAGE_ID.eq(stageId)).execute();
+    }
+}
@@ -0,0 +1,188 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.ACCOUNT;
+import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY;
+import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY_GROUP;
+import static ch.kopolinfo.budget.model.jooq.Tables.CURRENCY;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Table;
+
+import ch.kopolinfo.budget.db.MetadataVersion.Stamp;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Account;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Category;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.CategoryGroup;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Currency;
+
+/**
+ * Unveränderlicher Stand der Stammdaten (Währungen, Accounts, Kategoriegruppen, Kategorien)
+ * mit Index über die IDs. Kurzlebige CLI-Läufe laden ihn aus einer Snapshot-Datei statt mit
+ * vier Abfragen aus der DB.
+ *
+ * Gültig ist die Datei nur, wenn Format-Version, Spalten des Modells und der Stand aus
+ * METADATA_VERSION passen; dessen Zähler erhöhen Trigger bei jeder Änderung (siehe
+ * MetadataVersion). INFORMATION_SCHEMA.TABLES.LAST_MODIFICATION taugt dafür nicht, H2 setzt
+ * den Wert beim Öffnen der DB auf 0 zurück.
+ */
+public final class MetadataSnapshot {
+    // Bei Änderungen am Dateiformat erhöhen, alte Snapshots werden dann neu geschrieben
+    private static final int FORMAT_VERSION = 2;
+
+    static final List<Table<?>> TABLES = List.of(CURRENCY, ACCOUNT, CATEGORY_GROUP, CATEGORY);
+
+    private static final String UNASSIGNED_CATEGORY_ID = "UNASSIGNED";
+
+    private final Map<String, Currency> currencies;
+    private final Map<String, Account> accounts;
+    private final Map<String, CategoryGroup> categoryGroups;
+    private final Map<String, Category> categories;
+    private final Category unassignedCategory;
+
+    private MetadataSnapshot(Map<Table<?>, List<? extends Record>> records) {
+        this.currencies = index(records.get(CURRENCY), Currency.class, Currency::getCurrencyCode);
+        this.accounts = index(records.get(ACCOUNT), Account.class, Account::getId);
+        this.categoryGroups = index(records.get(CATEGORY_GROUP), CategoryGroup.class, CategoryGroup::getId);
+        this.categories = index(records.get(CATEGORY), Category.class, Category::getId);
+        this.unassignedCategory = categories.get(UNASSIGNED_CATEGORY_ID);
+    }
+
+    /**
+     * Lädt die Stammdaten aus der Snapshot-Datei, falls sie zur DB passt, sonst aus der DB;
+     * im zweiten Fall wird die Datei neu geschrieben.
+     * @param file Snapshot-Datei oder null, um immer aus der DB zu lesen
+     */
+    public static MetadataSnapshot load(DSLContext dsl, Path file) {
+        // Vor den Tabellen lesen: eine Änderung dazwischen landet so höchstens unter dem älteren Stand
+        Stamp stamp = MetadataVersion.current(dsl);
+        if (file != null) {
+            MetadataSnapshot cached = read(dsl, file, stamp);
+            if (cached != null) return cached;
+        }
+
+        Map<Table<?>, List<? extends Record>> records = new LinkedHashMap<>();
+        for (Table<?> table : TABLES) {
+            records.put(table, dsl.selectFrom(table).fetch());
+        }
+        MetadataSnapshot snapshot = new MetadataSnapshot(records);
+        if (file != null) {
+            write(file, stamp, records);
+        }
+        return snapshot;
+    }
+
+    private static MetadataSnapshot read(DSLContext dsl, Path file, Stamp stamp) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION || in.readLong() != stamp.instanceId() || in.readLong() != stamp.version()) {
+                return null;
+            }
+
+            Map<Table<?>, List<? extends Record>> records = new LinkedHashMap<>();
+            for (Table<?> table : TABLES) {
+                Field<?>[] fields = table.fields();
+                if (!in.readUTF().equals(table.getName()) || in.readInt() != fields.length) return null;
+                for (Field<?> field : fields) {
+                    if (!in.readUTF().equals(field.getName())) return null;
+                }
+
+                int rowCount = in.readInt();
+                List<Record> rows = new ArrayList<>(rowCount);
+                for (int i = 0; i < rowCount; i++) {
+                    Record record = dsl.newRecord(table);
+                    for (Field<?> field : fields) {
+                        set(record, field, in.readBoolean() ? in.readUTF() : null);
+                    }
+                    rows.add(record);
+                }
+                records.put(table, rows);
+            }
+            return new MetadataSnapshot(records);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            // Unlesbarer Snapshot: wie ein veralteter behandeln und neu schreiben
+            System.err.println("Stammdaten-Snapshot " + file + " wird ignoriert: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static <T> void set(Record record, Field<T> field, String text) {
+        record.set(field, text == null ? null : field.getDataType().convert(text));
+    }
+
+    /**
+     * Schreibt zuerst in eine temporäre Datei und ersetzt dann atomar, damit parallel
+     * startende Läufe nie einen halben Snapshot lesen.
+     */
+    private static void write(Path file, Stamp stamp, Map<Table<?>, List<? extends Record>> records) {
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                    out.writeInt(FORMAT_VERSION);
+                    out.writeLong(stamp.instanceId());
+                    out.writeLong(stamp.version());
+                    for (Map.Entry<Table<?>, List<? extends Record>> entry : records.entrySet()) {
+                        Field<?>[] fields = entry.getKey().fields();
+                        out.writeUTF(entry.getKey().getName());
+                        out.writeInt(fields.length);
+                        for (Field<?> field : fields) {
+                            out.writeUTF(field.getName());
+                        }
+                        out.writeInt(entry.getValue().size());
+                        for (Record record : entry.getValue()) {
+                            for (Field<?> field : fields) {
+                                String text = record.get(field, String.class);
+                                out.writeBoolean(text != null);
+                                if (text != null) out.writeUTF(text);
+                            }
+                        }
+                    }
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            // Ohne Snapshot geht es auch, nur beim nächsten Start langsamer
+            System.err.println("Stammdaten-Snapshot " + file + " nicht geschrieben: " + e.getMessage());
+        }
+    }
+
+    private static <T> Map<String, T> index(List<? extends Record> records, Class<T> type, Function<T, String> id) {
+        Map<String, T> index = new LinkedHashMap<>();
+        for (Record record : records) {
+            T value = record.into(type);
+            index.put(id.apply(value), value);
+        }
+        return Map.copyOf(index);
+    }
+
+    public Map<String, Currency> currencies() { return currencies; }
+    public Map<String, Account> accounts() { return accounts; }
+    public Map<String, CategoryGroup> categoryGroups() { return categoryGroups; }
+    public Map<String, Category> categories() { return categories; }
+
+    /**
+     * Die Kategorie "UNASSIGNED", null falls sie fehlt.
+     */
+    public Category unassignedCategory() { return unassignedCategory; }
+}
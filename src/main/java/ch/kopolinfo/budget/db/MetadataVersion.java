@@ -0,0 +1,77 @@
+package ch.kopolinfo.budget.db;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.h2.api.Trigger;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record2;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Änderungszähler der Stammdaten in der einzeiligen Seitentabelle METADATA_VERSION. Trigger auf
+ * CURRENCY, ACCOUNT, CATEGORY_GROUP und CATEGORY erhöhen VERSION in derselben Transaktion wie
+ * die Änderung; MetadataSnapshot prüft seine Datei so mit einer einzigen Zeile statt mit den
+ * Tabellen selbst. INSTANCE_ID wird beim Anlegen zufällig gewählt und unterscheidet
+ * Datenbanken, die sich eine Snapshot-Datei teilen könnten (gleiche URL, neu angelegt).
+ *
+ * Die Trigger rufen Bump auf: wer die DB ausserhalb der App öffnet (z.B. die H2-Konsole)
+ * und dort Stammdaten ändert, braucht das App-Jar im Klassenpfad.
+ */
+public final class MetadataVersion {
+    static final Table<Record> METADATA_VERSION = DSL.table(DSL.name("METADATA_VERSION"));
+    static final Field<Long> INSTANCE_ID = DSL.field(DSL.name("METADATA_VERSION", "INSTANCE_ID"), SQLDataType.BIGINT);
+    static final Field<Long> VERSION = DSL.field(DSL.name("METADATA_VERSION", "VERSION"), SQLDataType.BIGINT);
+
+    private MetadataVersion() {}
+
+    /**
+     * Stand der Stammdaten: INSTANCE_ID und VERSION.
+     */
+    public record Stamp(long instanceId, long version) {}
+
+    /**
+     * Legt Tabelle und Trigger an, falls die Tabelle fehlt.
+     */
+    static void createIfMissing(DSLContext dsl) {
+        if (AppDataContext.tableExists(dsl, METADATA_VERSION.getName())) return;
+
+        dsl.createTableIfNotExists(METADATA_VERSION)
+                .column(DSL.name("INSTANCE_ID"), SQLDataType.BIGINT.notNull())
+                .column(DSL.name("VERSION"), SQLDataType.BIGINT.notNull())
+                .execute();
+        dsl.insertInto(METADATA_VERSION, INSTANCE_ID, VERSION)
+                .values(ThreadLocalRandom.current().nextLong(), 0L)
+                .execute();
+        for (Table<?> table : MetadataSnapshot.TABLES) {
+            // jOOQ kennt H2-Trigger mit Java-Klasse nicht, daher Plain SQL. Pro Zeile, weil H2 in
+            // Statement-Triggern bei Autocommit keine Schreibzugriffe zulässt; die Tabellen sind klein.
+            dsl.execute("CREATE TRIGGER IF NOT EXISTS " + table.getName() + "_METADATA_VERSION "
+                    + "AFTER INSERT, UPDATE, DELETE ON " + table.getName() + " FOR EACH ROW "
+                    + "CALL '" + Bump.class.getName() + "'");
+        }
+    }
+
+    public static Stamp current(DSLContext dsl) {
+        Record2<Long, Long> record = dsl.select(INSTANCE_ID, VERSION).from(METADATA_VERSION).fetchOne();
+        return new Stamp(record.value1(), record.value2());
+    }
+
+    /**
+     * Von H2 instanziert, daher öffentlich mit Default-Konstruktor.
+     */
+    public static final class Bump implements Trigger {
+        @Override
+        public void fire(Connection connection, Object[] oldRow, Object[] newRow) throws SQLException {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("UPDATE METADATA_VERSION SET VERSION = VERSION + 1");
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
+import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record5;
+import org.jooq.Select;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Summe und Anzahl der Transaktionen pro (Account, Kategorie, Monat) in der Seitentabelle
+ * MONTHLY_AGGREGATE, mehrmonatige Transaktionen anteilig (siehe TransactionAllocation).
+ * TX_COUNT zählt eine solche Transaktion in jedem ihrer Monate einmal mit.
+ * CSVImporter, RulesApplier und FileDeleter führen die Tabelle in ihrer Transaktion über
+ * Deltas nach: add() nach dem Einfügen bzw. Umbuchen, subtract() vorher.
+ * YEAR_MONTH ist als Zahl yyyymm abgelegt.
+ */
+public final class MonthlyAggregate {
+
+    static final Table<Record> MONTHLY_AGGREGATE = DSL.table(DSL.name("MONTHLY_AGGREGATE"));
+    static final Field<String> ACCOUNT_ID = DSL.field(DSL.name("MONTHLY_AGGREGATE", "ACCOUNT_ID"), SQLDataType.VARCHAR);
+    static final Field<String> CATEGORY_ID = DSL.field(DSL.name("MONTHLY_AGGREGATE", "CATEGORY_ID"), SQLDataType.VARCHAR);
+    static final Field<Integer> YEAR_MONTH = DSL.field(DSL.name("MONTHLY_AGGREGATE", "YEAR_MONTH"), SQLDataType.INTEGER);
+    static final Field<BigDecimal> AMOUNT = DSL.field(DSL.name("MONTHLY_AGGREGATE", "AMOUNT"), SQLDataType.DECIMAL);
+    static final Field<Integer> TX_COUNT = DSL.field(DSL.name("MONTHLY_AGGREGATE", "TX_COUNT"), SQLDataType.INTEGER);
+
+    private MonthlyAggregate() {}
+
+    /**
+     * Legt die Tabelle an, falls sie fehlt, und füllt sie in diesem Fall aus TRANSACTION.
+     */
+    static void createIfMissing(DSLContext dsl) {
+        if (AppDataContext.tableExists(dsl, MONTHLY_AGGREGATE.getName())) return;
+
+        dsl.createTableIfNotExists(MONTHLY_AGGREGATE)
+                .column(DSL.name("ACCOUNT_ID"), SQLDataType.VARCHAR(64).notNull())
+                .column(DSL.name("CATEGORY_ID"), SQLDataType.VARCHAR(64).notNull())
+                .column(DSL.name("YEAR_MONTH"), SQLDataType.INTEGER.notNull())
+                .column(DSL.name("AMOUNT"), SQLDataType.DECIMAL(24, 6).notNull())
+                .column(DSL.name("TX_COUNT"), SQLDataType.INTEGER.notNull())
+                .constraints(DSL.primaryKey(DSL.name("ACCOUNT_ID"), DSL.name("CATEGORY_ID"), DSL.name("YEAR_MONTH")))
+                .execute();
+
+        System.out.println("Monatsaggregat angelegt, summiere bestehende Transaktionen...");
+        System.out.println(rebuild(dsl) + " Aggregatzeilen erstellt.");
+    }
+
+    /**
+     * Zählt die Transaktionen, die die Bedingung auf TRANSACTION/PAYMENT erfüllen, hinzu.
+     */
+    public static void add(DSLContext txDsl, Condition transactionCondition) {
+        merge(txDsl, transactionCondition, 1);
+    }
+
+    /**
+     * Zieht die Transaktionen ab; vor dem Löschen bzw. Umbuchen aufrufen.
+     */
+    public static void subtract(DSLContext txDsl, Condition transactionCondition) {
+        merge(txDsl, transactionCondition, -1);
+        txDsl.deleteFrom(MONTHLY_AGGREGATE).where(TX_COUNT.eq(0)).execute();
+    }
+
+    private static void merge(DSLContext txDsl, Condition transactionCondition, int sign) {
+        Table<?> delta = source(transactionCondition).asTable("DELTA");
+        Field<String> deltaAccount = delta.field(0, String.class);
+        Field<String> deltaCategory = delta.field(1, String.class);
+        Field<Integer> deltaMonth = delta.field(2, Integer.class);
+        Field<BigDecimal> deltaAmount = delta.field(3, BigDecimal.class).mul(sign);
+        Field<Integer> deltaCount = delta.field(4, Integer.class).mul(sign);
+
+        txDsl.mergeInto(MONTHLY_AGGREGATE)
+                .using(delta)
+                .on(ACCOUNT_ID.eq(deltaAccount)
+                        .and(CATEGORY_ID.eq(deltaCategory))
+                        .and(YEAR_MONTH.eq(deltaMonth)))
+                .whenMatchedThenUpdate()
+                .set(AMOUNT, AMOUNT.add(deltaAmount))
+                .set(TX_COUNT, TX_COUNT.add(deltaCount))
+                .whenNotMatchedThenInsert(ACCOUNT_ID, CATEGORY_ID, YEAR_MONTH, AMOUNT, TX_COUNT)
+                .values(deltaAccount, deltaCategory, deltaMonth, deltaAmount, deltaCount)
+                .execute();
+    }
+
+    /**
+     * Aggregat direkt aus den Transaktionen: Account, Kategorie, yyyymm, Summe, Anzahl.
+     * Mehrmonatige Transaktionen zählen mit ihren Anteilen aus TRANSACTION_ALLOCATION.
+     */
+    private static Select<Record5<String, String, Integer, BigDecimal, Integer>> source(Condition transactionCondition) {
+        var singleMonth = DSL.select(PAYMENT.ACCOUNT_ID, TRANSACTION.CATEGORY_ID,
+                        TransactionAllocation.yearMonth(TRANSACTION.VALID_FROM).as("YM"), TRANSACTION.AMOUNT.as("AMT"))
+                .from(TRANSACTION)
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                .where(transactionCondition)
+                .and(TransactionAllocation.singleMonth());
+        var allocated = DSL.select(PAYMENT.ACCOUNT_ID, TRANSACTION.CATEGORY_ID,
+                        TransactionAllocation.YEAR_MONTH.as("YM"), TransactionAllocation.AMOUNT.as("AMT"))
+                .from(TRANSACTION)
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                .join(TransactionAllocation.TRANSACTION_ALLOCATION).on(TransactionAllocation.TRANSACTION_ID.eq(TRANSACTION.TRANSACTION_ID))
+                .where(transactionCondition);
+
+        Table<?> rows = singleMonth.unionAll(allocated).asTable("ROWS");
+        Field<String> account = rows.field(0, String.class);
+        Field<String> category = rows.field(1, String.class);
+        Field<Integer> yearMonth = rows.field(2, Integer.class);
+        return DSL.select(account, category, yearMonth, DSL.sum(rows.field(3, BigDecimal.class)).as("AMT"), DSL.count().as("CNT"))
+                .from(rows)
+                .groupBy(account, category, yearMonth);
+    }
+
+    /**
+     * Baut das Aggregat vollständig aus TRANSACTION neu auf.
+     * @return Anzahl Aggregatzeilen
+     */
+    public static int rebuild(DSLContext dsl) {
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = configuration.dsl();
+            txDsl.deleteFrom(MONTHLY_AGGREGATE).execute();
+            return txDsl.insertInto(MONTHLY_AGGREGATE, ACCOUNT_ID, CATEGORY_ID, YEAR_MONTH, AMOUNT, TX_COUNT)
+                    .select(source(DSL.noCondition()))
+                    .execute();
+        });
+    }
+
+    private record Key(String accountId, String categoryId, int yearMonth) implements Comparable<Key> {
+        @Override
+        public int compareTo(Key other) {
+            int result = accountId.compareTo(other.accountId);
+            if (result == 0) result = categoryId.compareTo(other.categoryId);
+            return result != 0 ? result : Integer.compare(yearMonth, other.yearMonth);
+        }
+    }
+
+    private record Totals(BigDecimal amount, int count) {
+        boolean matches(Totals other) {
+            return other != null && count == other.count && amount.compareTo(other.amount) == 0;
+        }
+    }
+
+    /**
+     * Vergleicht das nachgeführte Aggregat mit einer Neuberechnung und gibt die Abweichungen aus.
+     * @return Anzahl abweichender Zeilen
+     */
+    public static int verify(DSLContext dsl) {
+        Map<Key, Totals> expected = new HashMap<>();
+        dsl.fetch(source(DSL.noCondition())).forEach(record -> expected.put(
+                new Key(record.value1(), record.value2(), record.value3()), new Totals(record.value4(), record.value5())));
+
+        Map<Key, Totals> maintained = new HashMap<>();
+        dsl.select(ACCOUNT_ID, CATEGORY_ID, YEAR_MONTH, AMOUNT, TX_COUNT)
+                .from(MONTHLY_AGGREGATE)
+                .forEach(record -> maintained.put(
+                        new Key(record.value1(), record.value2(), record.value3()), new Totals(record.value4(), record.value5())));
+
+        int differences = 0;
+        TreeSet<Key> keys = new TreeSet<>(expected.keySet());
+        keys.addAll(maintained.keySet());
+        for (Key key : keys) {
+            Totals should = expected.get(key);
+            Totals is = maintained.get(key);
+            if (should == null ? is.count() == 0 : should.matches(is)) continue;
+
+            differences++;
+            System.out.println(String.format("%-20s %-20s %6d  erwartet %s, nachgeführt %s",
+                    key.accountId(), key.categoryId(), key.yearMonth(), format(should), format(is)));
+        }
+        return differences;
+    }
+
+    private static String format(Totals totals) {
+        return totals == null ? "-" : totals.amount().stripTrailingZeros().toPlainString() + " / " + totals.count();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || !(args[0].equals("verify") || args[0].equals("rebuild"))) {
+            System.out.println("Usage: MonthlyAggregate verify | rebuild");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            DSLContext dsl = context.getDsl();
+            if (args[0].equals("rebuild")) {
+                System.out.println(rebuild(dsl) + " Aggregatzeilen erstellt.");
+            } else {
+                int differences = verify(dsl);
+                System.out.println(differences == 0
+                        ? "Monatsaggregat stimmt mit den Transaktionen überein."
+                        : differences + " abweichende Aggregatzeilen, Neuaufbau mit 'rebuild'.");
+            }
+        } catch (Exception e) {
+            System.err.println("Fehler beim Zugriff auf das Monatsaggregat:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Record5;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+import ch.kopolinfo.budget.csvimport.RowFingerprinter;
+
+/**
+ * Fingerabdrücke (siehe RowFingerprinter) aller importierten Payments in der Seitentabelle
+ * PAYMENT_HASH, Primärschlüssel (ACCOUNT_ID, ROW_HASH). Ein Import prüft pro Chunk nur
+ * die Hashes seiner eigenen Zeilen, der Aufwand wächst also nicht mit der Historie.
+ */
+public final class PaymentHashIndex {
+    private static final int INSERT_CHUNK = 5000;
+
+    static final Table<Record> PAYMENT_HASH = DSL.table(DSL.name("PAYMENT_HASH"));
+    static final Field<String> ACCOUNT_ID = DSL.field(DSL.name("PAYMENT_HASH", "ACCOUNT_ID"), SQLDataType.VARCHAR);
+    static final Field<Long> ROW_HASH = DSL.field(DSL.name("PAYMENT_HASH", "ROW_HASH"), SQLDataType.BIGINT);
+    static final Field<Integer> PAYMENT_ID = DSL.field(DSL.name("PAYMENT_HASH", "PAYMENT_ID"), SQLDataType.INTEGER);
+
+    private PaymentHashIndex() {}
+
+    /**
+     * Legt die Tabelle an, falls sie fehlt, und berechnet in diesem Fall die Hashes der Historie.
+     * Der Index auf PAYMENT (ACCOUNT_ID, BOOKING_DATE) für countExisting() wird auch in
+     * bestehenden Datenbanken nachgezogen.
+     */
+    static void createIfMissing(DSLContext dsl) {
+        dsl.createIndexIfNotExists(DSL.name("PAYMENT_ACCOUNT_DATE_IDX"))
+                .on(PAYMENT, PAYMENT.ACCOUNT_ID, PAYMENT.BOOKING_DATE)
+                .execute();
+        if (AppDataContext.tableExists(dsl, PAYMENT_HASH.getName())) return;
+
+        dsl.createTableIfNotExists(PAYMENT_HASH)
+                .column(DSL.name("ACCOUNT_ID"), SQLDataType.VARCHAR(64).notNull())
+                .column(DSL.name("ROW_HASH"), SQLDataType.BIGINT.notNull())
+                .column(DSL.name("PAYMENT_ID"), SQLDataType.INTEGER.notNull())
+                .constraints(DSL.primaryKey(DSL.name("ACCOUNT_ID"), DSL.name("ROW_HASH")))
+                .execute();
+        dsl.createIndexIfNotExists(DSL.name("PAYMENT_HASH_PAYMENT_IDX"))
+                .on(PAYMENT_HASH, DSL.field(DSL.name("PAYMENT_ID")))
+                .execute();
+
+        System.out.println("Hash-Index angelegt, berechne Fingerabdrücke der bestehenden Payments...");
+        System.out.println(rebuild(dsl) + " Payments erfasst.");
+    }
+
+    /**
+     * Welche der Hashes sind für den Account bereits importiert?
+     */
+    public static Set<Long> existing(DSLContext dsl, String accountId, Collection<Long> hashes) {
+        if (hashes.isEmpty()) return Set.of();
+        return new HashSet<>(dsl.select(ROW_HASH)
+                .from(PAYMENT_HASH)
+                .where(ACCOUNT_ID.eq(accountId))
+                .and(ROW_HASH.in(hashes))
+                .fetch(ROW_HASH));
+    }
+
+    /**
+     * Zählt die bestehenden Payments des Accounts an diesen Buchungstagen im Fingerprinter mit,
+     * damit neue Zeilen dieselbe Vorkommensnummer erhalten wie bei rebuild().
+     */
+    public static void countExisting(DSLContext dsl, String accountId, Collection<LocalDate> days, RowFingerprinter fingerprinter) {
+        if (days.isEmpty()) return;
+        dsl.select(PAYMENT.BOOKING_DATE, PAYMENT.AMOUNT, PAYMENT.DESCRIPTION)
+                .from(PAYMENT)
+                .where(PAYMENT.ACCOUNT_ID.eq(accountId))
+                .and(PAYMENT.BOOKING_DATE.in(days))
+                .forEach(record -> fingerprinter.countExisting(record.value1(), record.value2(), record.value3()));
+    }
+
+    public static void record(DSLContext txDsl, String accountId, List<Long> hashes, List<Integer> paymentIds) {
+        for (int from = 0; from < hashes.size(); from += INSERT_CHUNK) {
+            var insert = txDsl.insertInto(PAYMENT_HASH, ACCOUNT_ID, ROW_HASH, PAYMENT_ID);
+            for (int i = from; i < Math.min(from + INSERT_CHUNK, hashes.size()); i++) {
+                insert = insert.values(accountId, hashes.get(i), paymentIds.get(i));
+            }
+            insert.execute();
+        }
+    }
+
+    /**
+     * Entfernt die Hashes der Payments, die die Bedingung auf PAYMENT erfüllen.
+     */
+    public static int remove(DSLContext txDsl, Condition paymentCondition) {
+        return txDsl.deleteFrom(PAYMENT_HASH)
+                .where(PAYMENT_ID.in(DSL.select(PAYMENT.PAYMENT_ID).from(PAYMENT).where(paymentCondition)))
+                .execute();
+    }
+
+    /**
+     * Berechnet alle Hashes aus PAYMENT neu, pro Account in der Reihenfolge der PAYMENT_ID.
+     * @return Anzahl erfasster Payments
+     */
+    public static int rebuild(DSLContext dsl) {
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = configuration.dsl();
+            txDsl.deleteFrom(PAYMENT_HASH).execute();
+
+            int count = 0;
+            String currentAccount = null;
+            RowFingerprinter fingerprinter = null;
+            var insert = txDsl.insertInto(PAYMENT_HASH, ACCOUNT_ID, ROW_HASH, PAYMENT_ID);
+            int pending = 0;
+
+            try (Cursor<Record5<String, Integer, LocalDate, BigDecimal, String>> cursor = txDsl
+                    .select(PAYMENT.ACCOUNT_ID, PAYMENT.PAYMENT_ID, PAYMENT.BOOKING_DATE, PAYMENT.AMOUNT, PAYMENT.DESCRIPTION)
+                    .from(PAYMENT)
+                    .orderBy(PAYMENT.ACCOUNT_ID, PAYMENT.PAYMENT_ID)
+                    .fetchSize(INSERT_CHUNK)
+                    .fetchLazy()) {
+                for (Record5<String, Integer, LocalDate, BigDecimal, String> record : cursor) {
+                    if (!record.value1().equals(currentAccount)) {
+                        currentAccount = record.value1();
+                        fingerprinter = new RowFingerprinter();
+                    }
+                    long hash = fingerprinter.next(record.value3(), record.value4(), record.value5());
+                    insert = insert.values(currentAccount, hash, record.value2());
+                    count++;
+                    if (++pending == INSERT_CHUNK) {
+                        insert.execute();
+                        insert = txDsl.insertInto(PAYMENT_HASH, ACCOUNT_ID, ROW_HASH, PAYMENT_ID);
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                insert.execute();
+            }
+            return count;
+        });
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 1 || !args[0].equals("rebuild")) {
+            System.out.println("Usage: PaymentHashIndex rebuild");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            System.out.println(rebuild(context.getDsl()) + " Payments erfasst.");
+        } catch (Exception e) {
+            System.err.println("Fehler beim Neuaufbau des Hash-Index:");
+            e.printStackTrace();
+        }
+    }
+}
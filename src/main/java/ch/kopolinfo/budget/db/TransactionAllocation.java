@@ -0,0 +1,151 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.Table;
+import org.jooq.impl.DSL;
+import org.jooq.impl.SQLDataType;
+
+/**
+ * Vorberechnete Monatsanteile für Transaktionen, deren VALID_FROM/VALID_TO über mehr als
+ * einen Monat reicht, in der Seitentabelle TRANSACTION_ALLOCATION. Der Betrag wird nach
+ * Tagen anteilig verteilt, der letzte Monat erhält die Rundungsdifferenz. Transaktionen
+ * innerhalb eines Monats haben keine Einträge und zählen wie bisher im Monat von VALID_FROM.
+ * Reports lesen so pro Monat nur fertige Beträge statt für jede Zeile Datumsarithmetik.
+ */
+public final class TransactionAllocation {
+    private static final int INSERT_CHUNK = 5000;
+
+    public static final Table<Record> TRANSACTION_ALLOCATION = DSL.table(DSL.name("TRANSACTION_ALLOCATION"));
+    public static final Field<Integer> TRANSACTION_ID = DSL.field(DSL.name("TRANSACTION_ALLOCATION", "TRANSACTION_ID"), SQLDataType.INTEGER);
+    public static final Field<Integer> YEAR_MONTH = DSL.field(DSL.name("TRANSACTION_ALLOCATION", "YEAR_MONTH"), SQLDataType.INTEGER);
+    public static final Field<BigDecimal> AMOUNT = DSL.field(DSL.name("TRANSACTION_ALLOCATION", "AMOUNT"), SQLDataType.DECIMAL);
+
+    private TransactionAllocation() {}
+
+    /**
+     * Legt die Tabelle an, falls sie fehlt, und verteilt in diesem Fall bestehende mehrmonatige Transaktionen.
+     */
+    static void createIfMissing(DSLContext dsl) {
+        if (AppDataContext.tableExists(dsl, TRANSACTION_ALLOCATION.getName())) return;
+
+        dsl.createTableIfNotExists(TRANSACTION_ALLOCATION)
+                .column(DSL.name("TRANSACTION_ID"), SQLDataType.INTEGER.notNull())
+                .column(DSL.name("YEAR_MONTH"), SQLDataType.INTEGER.notNull())
+                .column(DSL.name("AMOUNT"), SQLDataType.DECIMAL(24, 6).notNull())
+                .constraints(DSL.primaryKey(DSL.name("TRANSACTION_ID"), DSL.name("YEAR_MONTH")))
+                .execute();
+        dsl.createIndexIfNotExists(DSL.name("TRANSACTION_ALLOCATION_MONTH_IDX"))
+                .on(TRANSACTION_ALLOCATION, DSL.field(DSL.name("YEAR_MONTH")))
+                .execute();
+
+        int allocated = dsl.transactionResult(configuration -> allocate(configuration.dsl(), DSL.noCondition()));
+        if (allocated > 0) {
+            System.out.println(allocated + " mehrmonatige Transaktionen verteilt.");
+            // Ein bereits bestehendes Monatsaggregat kannte die Verteilung noch nicht
+            if (AppDataContext.tableExists(dsl, MonthlyAggregate.MONTHLY_AGGREGATE.getName())) {
+                MonthlyAggregate.rebuild(dsl);
+            }
+        }
+    }
+
+    /**
+     * Transaktionen, die nur einen Monat betreffen und deshalb keine Verteilung haben.
+     */
+    public static Condition singleMonth() {
+        return TRANSACTION.VALID_TO.isNull()
+                .or(DSL.year(TRANSACTION.VALID_FROM).eq(DSL.year(TRANSACTION.VALID_TO))
+                        .and(DSL.month(TRANSACTION.VALID_FROM).eq(DSL.month(TRANSACTION.VALID_TO))));
+    }
+
+    /**
+     * yyyymm des Datums, wie in TRANSACTION_ALLOCATION und MONTHLY_AGGREGATE.
+     */
+    public static Field<Integer> yearMonth(Field<LocalDate> date) {
+        return DSL.year(date).mul(100).add(DSL.month(date));
+    }
+
+    /**
+     * Berechnet die Monatsanteile der mehrmonatigen Transaktionen, die die Bedingung erfüllen.
+     * Vorher ggf. mit remove() die alten Anteile entfernen.
+     * @return Anzahl verteilter Transaktionen
+     */
+    public static int allocate(DSLContext txDsl, Condition transactionCondition) {
+        var insert = txDsl.insertInto(TRANSACTION_ALLOCATION, TRANSACTION_ID, YEAR_MONTH, AMOUNT);
+        int pending = 0;
+        int count = 0;
+
+        var transactions = txDsl.select(TRANSACTION.TRANSACTION_ID, TRANSACTION.AMOUNT, TRANSACTION.VALID_FROM, TRANSACTION.VALID_TO)
+                .from(TRANSACTION)
+                .where(transactionCondition)
+                .andNot(singleMonth())
+                .fetch();
+        for (var transaction : transactions) {
+            List<Share> shares = shares(transaction.value2(), transaction.value3(), transaction.value4());
+            for (Share share : shares) {
+                insert = insert.values(transaction.value1(), share.yearMonth(), share.amount());
+                if (++pending == INSERT_CHUNK) {
+                    insert.execute();
+                    insert = txDsl.insertInto(TRANSACTION_ALLOCATION, TRANSACTION_ID, YEAR_MONTH, AMOUNT);
+                    pending = 0;
+                }
+            }
+            count++;
+        }
+        if (pending > 0) {
+            insert.execute();
+        }
+        return count;
+    }
+
+    /**
+     * Entfernt die Anteile der Transaktionen, die die Bedingung auf TRANSACTION erfüllen.
+     */
+    public static int remove(DSLContext txDsl, Condition transactionCondition) {
+        return txDsl.deleteFrom(TRANSACTION_ALLOCATION)
+                .where(TRANSACTION_ID.in(DSL.select(TRANSACTION.TRANSACTION_ID).from(TRANSACTION).where(transactionCondition)))
+                .execute();
+    }
+
+    record Share(int yearMonth, BigDecimal amount) {}
+
+    /**
+     * Teilt den Betrag nach Tagen auf die Monate von from bis to (inklusive) auf.
+     */
+    static List<Share> shares(BigDecimal amount, LocalDate from, LocalDate to) {
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("VALID_TO " + to + " liegt vor VALID_FROM " + from + ".");
+        }
+        long totalDays = ChronoUnit.DAYS.between(from, to) + 1;
+        int scale = Math.max(amount.scale(), 2);
+
+        List<Share> shares = new ArrayList<>();
+        BigDecimal allocated = BigDecimal.ZERO;
+        for (YearMonth month = YearMonth.from(from); !month.isAfter(YearMonth.from(to)); month = month.plusMonths(1)) {
+            int yearMonth = month.getYear() * 100 + month.getMonthValue();
+            if (month.equals(YearMonth.from(to))) {
+                shares.add(new Share(yearMonth, amount.subtract(allocated)));
+                break;
+            }
+            LocalDate start = month.atDay(1).isBefore(from) ? from : month.atDay(1);
+            long days = ChronoUnit.DAYS.between(start, month.atEndOfMonth()) + 1;
+            BigDecimal share = amount.multiply(BigDecimal.valueOf(days))
+                    .divide(BigDecimal.valueOf(totalDays), scale, RoundingMode.HALF_EVEN);
+            shares.add(new Share(yearMonth, share));
+            allocated = allocated.add(share);
+        }
+        return shares;
+    }
+}
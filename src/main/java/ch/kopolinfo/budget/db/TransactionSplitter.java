@@ -0,0 +1,154 @@
+package ch.kopolinfo.budget.db;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.impl.DSL;
+
+import ch.kopolinfo.budget.model.jooq.tables.records.TransactionRecord;
+
+/**
+ * Verteilt Transaktionen über einen Zeitraum (z.B. eine Jahresprämie über zwölf Monate)
+ * und teilt sie auf mehrere Kategorien auf. Verteilung und Monatsaggregat werden in
+ * derselben Transaktion nachgeführt.
+ */
+public class TransactionSplitter {
+
+    public record Part(String categoryId, BigDecimal amount) {}
+
+    private final AppDataContext context;
+
+    public TransactionSplitter(AppDataContext context) {
+        this.context = context;
+    }
+
+    /**
+     * Setzt VALID_FROM/VALID_TO der Transaktion und berechnet ihre Monatsanteile neu.
+     */
+    public void spread(int transactionId, LocalDate validFrom, LocalDate validTo) {
+        if (validTo.isBefore(validFrom)) {
+            throw new IllegalArgumentException("Ende " + validTo + " liegt vor Beginn " + validFrom + ".");
+        }
+        context.getDsl().transaction(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            TransactionRecord transaction = fetch(txDsl, transactionId);
+            Condition ofPayment = TRANSACTION.PAYMENT_ID.eq(transaction.getPaymentId());
+
+            // Alle Teile des Payments gemeinsam verteilen, sonst laufen sie zeitlich auseinander
+            MonthlyAggregate.subtract(txDsl, ofPayment);
+            TransactionAllocation.remove(txDsl, ofPayment);
+            txDsl.update(TRANSACTION)
+                    .set(TRANSACTION.VALID_FROM, validFrom)
+                    .set(TRANSACTION.VALID_TO, validTo)
+                    .where(ofPayment)
+                    .execute();
+            TransactionAllocation.allocate(txDsl, ofPayment);
+            MonthlyAggregate.add(txDsl, ofPayment);
+        });
+    }
+
+    /**
+     * Teilt die Transaktion auf: der erste Teil ersetzt sie, die weiteren werden als neue
+     * Transaktionen desselben Payments mit gleichem Zeitraum angelegt.
+     * @return IDs aller Teile, beginnend mit der bestehenden Transaktion
+     */
+    public List<Integer> split(int transactionId, List<Part> parts) {
+        if (parts.size() < 2) {
+            throw new IllegalArgumentException("Für eine Aufteilung braucht es mindestens zwei Teile.");
+        }
+        for (Part part : parts) {
+            if (context.getCategory(part.categoryId()) == null) {
+                throw new IllegalArgumentException("Kategorie '" + part.categoryId() + "' existiert nicht.");
+            }
+        }
+
+        return context.getDsl().transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            TransactionRecord transaction = fetch(txDsl, transactionId);
+
+            BigDecimal sum = parts.stream().map(Part::amount).reduce(BigDecimal.ZERO, BigDecimal::add);
+            if (sum.compareTo(transaction.getAmount()) != 0) {
+                throw new IllegalArgumentException(String.format(
+                        "Die Teile ergeben %s, die Transaktion beträgt %s.", sum.toPlainString(), transaction.getAmount().toPlainString()));
+            }
+
+            Condition ofPayment = TRANSACTION.PAYMENT_ID.eq(transaction.getPaymentId());
+            MonthlyAggregate.subtract(txDsl, ofPayment);
+            TransactionAllocation.remove(txDsl, ofPayment);
+
+            List<Integer> ids = new ArrayList<>();
+            transaction.setCategoryId(parts.get(0).categoryId());
+            transaction.setAmount(parts.get(0).amount());
+            txDsl.executeUpdate(transaction);
+            ids.add(transaction.getTransactionId());
+
+            for (Part part : parts.subList(1, parts.size())) {
+                TransactionRecord copy = txDsl.newRecord(TRANSACTION);
+                copy.setPaymentId(transaction.getPaymentId());
+                copy.setCategoryId(part.categoryId());
+                copy.setAmount(part.amount());
+                copy.setValidFrom(transaction.getValidFrom());
+                copy.setValidTo(transaction.getValidTo());
+                copy.setDescription(transaction.getDescription());
+                copy.insert();
+                ids.add(copy.getTransactionId());
+            }
+
+            TransactionAllocation.allocate(txDsl, ofPayment);
+            MonthlyAggregate.add(txDsl, ofPayment);
+            return ids;
+        });
+    }
+
+    private static TransactionRecord fetch(DSLContext txDsl, int transactionId) {
+        TransactionRecord transaction = txDsl.selectFrom(TRANSACTION)
+                .where(TRANSACTION.TRANSACTION_ID.eq(transactionId))
+                .fetchOne();
+        if (transaction == null) {
+            throw new IllegalArgumentException("Transaktion " + transactionId + " existiert nicht.");
+        }
+        return transaction;
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 2
+                || (args[0].equals("spread") && args.length < 4)
+                || (args[0].equals("split") && args.length < 4)
+                || !(args[0].equals("spread") || args[0].equals("split"))) {
+            System.out.println("Usage: TransactionSplitter spread <transaction_id> <von yyyy-MM-dd> <bis yyyy-MM-dd>");
+            System.out.println("       TransactionSplitter split <transaction_id> <kategorie>=<betrag> <kategorie>=<betrag> ...");
+            return;
+        }
+
+        try (AppDataContext context = new AppDataContext()) {
+            TransactionSplitter splitter = new TransactionSplitter(context);
+            int transactionId = Integer.parseInt(args[1]);
+
+            if (args[0].equals("spread")) {
+                LocalDate from = LocalDate.parse(args[2]);
+                LocalDate to = LocalDate.parse(args[3]);
+                splitter.spread(transactionId, from, to);
+                System.out.println("Transaktion " + transactionId + " auf " + from + " bis " + to + " verteilt.");
+            } else {
+                List<Part> parts = new ArrayList<>();
+                for (int i = 2; i < args.length; i++) {
+                    int separator = args[i].lastIndexOf('=');
+                    if (separator <= 0) {
+                        throw new IllegalArgumentException("Erwartet <kategorie>=<betrag>: " + args[i]);
+                    }
+                    parts.add(new Part(args[i].substring(0, separator), new BigDecimal(args[i].substring(separator + 1))));
+                }
+                System.out.println("Transaktion aufgeteilt in " + splitter.split(transactionId, parts) + ".");
+            }
+        } catch (Exception e) {
+            System.err.println("Fehler beim Verteilen bzw. Aufteilen der Transaktion:");
+            e.printStackTrace();
+        }
+    }
+}
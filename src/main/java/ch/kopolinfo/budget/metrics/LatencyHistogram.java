@@ -0,0 +1,98 @@
+package ch.kopolinfo.budget.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Verteilung von Dauern in Nanosekunden mit vier Buckets pro Zweierpotenz, die Perzentile
+ * sind damit auf etwa 12% genau. Aufzeichnen ist lock-frei und kann aus beliebig vielen
+ * Threads erfolgen; ein Snapshot ist nicht atomar über alle Zähler.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKETS = 4;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    /**
+     * Auswertung für JMX und den Lauf-Report. Zeiten in Millisekunden.
+     */
+    public record Snapshot(long count, long rows, double totalMillis, double meanMillis,
+            double p50Millis, double p95Millis, double p99Millis, double maxMillis, double rowsPerSecond) {}
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * @param rowCount Anzahl der in dieser Zeit verarbeiteten Zeilen, 0 wenn nicht zutreffend
+     */
+    public void record(long nanos, long rowCount) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        rows.add(rowCount);
+        totalNanos.add(value);
+        maxNanos.accumulate(value);
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public Snapshot snapshot() {
+        long n = count.sum();
+        long total = totalNanos.sum();
+        long max = maxNanos.get();
+        long rowSum = rows.sum();
+        return new Snapshot(n, rowSum, millis(total), n == 0 ? 0 : millis(total) / n,
+                millis(percentile(0.50, n, max)), millis(percentile(0.95, n, max)), millis(percentile(0.99, n, max)),
+                millis(max), total == 0 ? 0 : rowSum * 1e9 / total);
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        rows.reset();
+        totalNanos.reset();
+        maxNanos.reset();
+    }
+
+    /**
+     * Mitte des Buckets, in den das q-Quantil fällt, höchstens aber das Maximum.
+     */
+    private long percentile(double q, long n, long max) {
+        if (n == 0) return 0;
+        long rank = (long) Math.ceil(q * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(lowerBound(i) + (lowerBound(i + 1) - lowerBound(i)) / 2, max);
+            }
+        }
+        return max;
+    }
+
+    // 0..3 exakt, danach pro Zweierpotenz 2^e vier gleich breite Buckets
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+        return (exponent - 1) * SUB_BUCKETS + sub;
+    }
+
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + 1;
+        long sub = bucket % SUB_BUCKETS;
+        return exponent >= 63 ? Long.MAX_VALUE : (SUB_BUCKETS + sub) << (exponent - 2);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,263 @@
+package ch.kopolinfo.budget.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Messwerte der Import-Pipeline, des RulesAppliers und des FileDeleters: Dauern pro Stufe,
+ * Zeilen pro Sekunde, Treffer pro Kategorie, Anteil nicht zugeordneter Zeilen und die
+ * JDBC-Statements (siehe StatementMetrics). Alle Zähler sind lock-frei und dürfen aus den
+ * Worker-Threads des ParallelClassifier beschrieben werden.
+ *
+ * Die Werte sind über JMX sichtbar (abschaltbar mit -Dbudget.metrics.jmx=false); mit
+ * -Dbudget.metrics.report=&lt;datei&gt; schreiben die CLI-Einstiegspunkte am Ende einen JSON-Report.
+ */
+public final class PipelineMetrics implements PipelineMetricsMXBean {
+    public static final String OBJECT_NAME = "ch.kopolinfo.budget:type=PipelineMetrics";
+    public static final String REPORT_PROPERTY = "budget.metrics.report";
+
+    public enum Stage { PARSE, VALIDATE, CLASSIFY, INSERT, UPDATE, DELETE }
+
+    private static final PipelineMetrics GLOBAL = register(new PipelineMetrics());
+
+    private final Map<Stage, LatencyHistogram> stages = new EnumMap<>(Stage.class);
+    private final Map<String, LatencyHistogram> statements = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> categoryHits = new ConcurrentHashMap<>();
+    private final LongAdder classified = new LongAdder();
+    private final LongAdder unassigned = new LongAdder();
+    private final LongAdder imports = new LongAdder();
+    private final LongAdder importedRows = new LongAdder();
+    private final LongAdder importNanos = new LongAdder();
+    private volatile Instant since = Instant.now();
+
+    public PipelineMetrics() {
+        for (Stage stage : Stage.values()) {
+            stages.put(stage, new LatencyHistogram());
+        }
+    }
+
+    public static PipelineMetrics global() {
+        return GLOBAL;
+    }
+
+    private static PipelineMetrics register(PipelineMetrics metrics) {
+        if (!Boolean.parseBoolean(System.getProperty("budget.metrics.jmx", "true"))) {
+            return metrics;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            // Die Metriken funktionieren auch ohne JMX
+            System.err.println("PipelineMetrics nicht über JMX verfügbar: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    public void record(Stage stage, long nanos, long rows) {
+        stages.get(stage).record(nanos, rows);
+    }
+
+    /**
+     * Klassifizierung eines Batches; ein leeres Optional zählt als nicht zugeordnet.
+     */
+    public void recordClassification(long nanos, List<Optional<String>> categories) {
+        record(Stage.CLASSIFY, nanos, categories.size());
+
+        // Erst lokal zählen, damit pro Batch nur wenige gemeinsame Zähler berührt werden
+        Map<String, Integer> hits = new HashMap<>();
+        int misses = 0;
+        for (Optional<String> category : categories) {
+            if (category.isPresent()) {
+                hits.merge(category.get(), 1, Integer::sum);
+            } else {
+                misses++;
+            }
+        }
+        hits.forEach((category, count) -> categoryHits.computeIfAbsent(category, c -> new LongAdder()).add(count));
+        classified.add(categories.size());
+        unassigned.add(misses);
+    }
+
+    /**
+     * Ein ganzer Import (eine Datei bzw. alle Dateien eines Accounts).
+     */
+    public void recordImport(long nanos, int rows) {
+        imports.increment();
+        importedRows.add(rows);
+        importNanos.add(nanos);
+    }
+
+    public void recordStatement(String kind, long nanos, long rows) {
+        statements.computeIfAbsent(kind, k -> new LatencyHistogram()).record(nanos, rows);
+    }
+
+    @Override
+    public long getImports() {
+        return imports.sum();
+    }
+
+    @Override
+    public long getImportedRows() {
+        return importedRows.sum();
+    }
+
+    @Override
+    public double getImportRowsPerSecond() {
+        long nanos = importNanos.sum();
+        return nanos == 0 ? 0 : importedRows.sum() * 1e9 / nanos;
+    }
+
+    @Override
+    public long getClassifiedRows() {
+        return classified.sum();
+    }
+
+    @Override
+    public double getUnassignedRate() {
+        long total = classified.sum();
+        return total == 0 ? 0 : (double) unassigned.sum() / total;
+    }
+
+    @Override
+    public Map<String, Long> getCategoryHits() {
+        Map<String, Long> hits = new TreeMap<>();
+        categoryHits.forEach((category, count) -> hits.put(category, count.sum()));
+        return hits;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getStages() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        stages.forEach((stage, histogram) -> {
+            if (histogram.count() > 0) snapshots.put(stage.name(), histogram.snapshot());
+        });
+        return snapshots;
+    }
+
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getStatements() {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new TreeMap<>();
+        statements.forEach((kind, histogram) -> snapshots.put(kind, histogram.snapshot()));
+        return snapshots;
+    }
+
+    @Override
+    public void reset() {
+        stages.values().forEach(LatencyHistogram::reset);
+        statements.clear();
+        categoryHits.clear();
+        classified.reset();
+        unassigned.reset();
+        imports.reset();
+        importedRows.reset();
+        importNanos.reset();
+        since = Instant.now();
+    }
+
+    @Override
+    public String getReport() {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"since\": ").append(quote(since.toString())).append(",\n");
+        json.append("  \"until\": ").append(quote(Instant.now().toString())).append(",\n");
+        json.append("  \"imports\": ").append(getImports()).append(",\n");
+        json.append("  \"importedRows\": ").append(getImportedRows()).append(",\n");
+        json.append("  \"importRowsPerSecond\": ").append(number(getImportRowsPerSecond())).append(",\n");
+        json.append("  \"classifiedRows\": ").append(getClassifiedRows()).append(",\n");
+        json.append("  \"unassignedRate\": ").append(number(getUnassignedRate())).append(",\n");
+
+        json.append("  \"categoryHits\": {");
+        String separator = "\n";
+        for (Map.Entry<String, Long> hit : getCategoryHits().entrySet()) {
+            json.append(separator).append("    ").append(quote(hit.getKey())).append(": ").append(hit.getValue());
+            separator = ",\n";
+        }
+        json.append(separator.equals("\n") ? "},\n" : "\n  },\n");
+
+        json.append("  \"stages\": ");
+        appendSnapshots(json, getStages());
+        json.append(",\n  \"statements\": ");
+        appendSnapshots(json, getStatements());
+        return json.append("\n}\n").toString();
+    }
+
+    public void writeReport(Path file) throws IOException {
+        Files.writeString(file, getReport());
+    }
+
+    /**
+     * Schreibt den Report, falls -Dbudget.metrics.report gesetzt ist; für das Ende der main-Methoden.
+     */
+    public static void writeReportIfRequested() {
+        String file = System.getProperty(REPORT_PROPERTY);
+        if (file == null || file.isBlank()) return;
+        try {
+            GLOBAL.writeReport(Path.of(file.trim()));
+            System.out.println("Metriken geschrieben nach " + file.trim() + ".");
+        } catch (IOException e) {
+            System.err.println("Metriken konnten nicht geschrieben werden: " + e.getMessage());
+        }
+    }
+
+    private static void appendSnapshots(StringBuilder json, Map<String, LatencyHistogram.Snapshot> snapshots) {
+        if (snapshots.isEmpty()) {
+            json.append("{}");
+            return;
+        }
+        json.append("{");
+        String separator = "\n";
+        for (Map.Entry<String, LatencyHistogram.Snapshot> entry : snapshots.entrySet()) {
+            LatencyHistogram.Snapshot s = entry.getValue();
+            json.append(separator).append("    ").append(quote(entry.getKey())).append(": {")
+                    .append("\"count\": ").append(s.count())
+                    .append(", \"rows\": ").append(s.rows())
+                    .append(", \"totalMillis\": ").append(number(s.totalMillis()))
+                    .append(", \"meanMillis\": ").append(number(s.meanMillis()))
+                    .append(", \"p50Millis\": ").append(number(s.p50Millis()))
+                    .append(", \"p95Millis\": ").append(number(s.p95Millis()))
+                    .append(", \"p99Millis\": ").append(number(s.p99Millis()))
+                    .append(", \"maxMillis\": ").append(number(s.maxMillis()))
+                    .append(", \"rowsPerSecond\": ").append(number(s.rowsPerSecond()))
+                    .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  }");
+    }
+
+    private static String number(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
@@ -0,0 +1,35 @@
+package ch.kopolinfo.budget.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX-Sicht auf PipelineMetrics, z.B. in JConsole unter ch.kopolinfo.budget:type=PipelineMetrics.
+ */
+public interface PipelineMetricsMXBean {
+
+    long getImports();
+
+    long getImportedRows();
+
+    /** Importierte Zeilen pro Sekunde Importdauer (Parsen bis Commit). */
+    double getImportRowsPerSecond();
+
+    long getClassifiedRows();
+
+    /** Anteil der klassifizierten Zeilen, auf die keine Regel passte. */
+    double getUnassignedRate();
+
+    /** Treffer pro Kategorie, wie von den Regeln geliefert. */
+    Map<String, Long> getCategoryHits();
+
+    /** Dauern pro Stufe (PARSE, VALIDATE, CLASSIFY, INSERT, UPDATE, DELETE). */
+    Map<String, LatencyHistogram.Snapshot> getStages();
+
+    /** Dauern der JDBC-Statements pro Statement-Art (SELECT, INSERT, MERGE, ...). */
+    Map<String, LatencyHistogram.Snapshot> getStatements();
+
+    /** Lauf-Report als JSON. */
+    String getReport();
+
+    void reset();
+}
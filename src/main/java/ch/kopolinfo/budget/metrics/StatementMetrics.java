@@ -0,0 +1,46 @@
+package ch.kopolinfo.budget.metrics;
+
+import java.util.Locale;
+
+import org.jooq.ExecuteContext;
+import org.jooq.ExecuteListener;
+
+/**
+ * jOOQ-Listener, der Anzahl und Dauer aller ausgeführten Statements nach Art
+ * (erstes SQL-Schlüsselwort, bei Batches BATCH) in PipelineMetrics erfasst.
+ * Gemessen wird die Ausführung ohne das Abholen der Resultate.
+ */
+// ExecuteListener ist formal Serializable, dieser Listener lebt aber nur in der Konfiguration der AppDataContext
+@SuppressWarnings("serial")
+public class StatementMetrics implements ExecuteListener {
+    private static final String START = "budget.metrics.executeStart";
+
+    private final PipelineMetrics metrics;
+
+    public StatementMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void executeStart(ExecuteContext ctx) {
+        ctx.data(START, System.nanoTime());
+    }
+
+    @Override
+    public void executeEnd(ExecuteContext ctx) {
+        if (ctx.data(START) instanceof Long start) {
+            metrics.recordStatement(kind(ctx), System.nanoTime() - start, Math.max(ctx.rows(), 0));
+        }
+    }
+
+    static String kind(ExecuteContext ctx) {
+        String sql = ctx.sql();
+        if (sql == null) return ctx.type().name();
+
+        int start = 0;
+        while (start < sql.length() && !Character.isLetter(sql.charAt(start))) start++;
+        int end = start;
+        while (end < sql.length() && Character.isLetter(sql.charAt(end))) end++;
+        return end > start ? sql.substring(start, end).toUpperCase(Locale.ROOT) : ctx.type().name();
+    }
+}
@@ -0,0 +1,300 @@
+package ch.kopolinfo.budget.report;
+
+import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY;
+import static ch.kopolinfo.budget.model.jooq.Tables.CATEGORY_GROUP;
+import static ch.kopolinfo.budget.model.jooq.Tables.IMPORT_ENTRY;
+import static ch.kopolinfo.budget.model.jooq.Tables.IMPORT_LOG;
+import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
+import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jooq.Condition;
+import org.jooq.Cursor;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record5;
+
+import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.db.TransactionAllocation;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Account;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Category;
+import ch.kopolinfo.budget.report.LedgerColumns.Dimension;
+import ch.kopolinfo.budget.report.PeriodTotals.Period;
+
+/**
+ * Hält alle Transaktionen spaltenweise im Speicher (siehe LedgerColumns) und führt sie
+ * pro Import nach: refresh() lädt nur neu hinzugekommene Imports und entfernt gelöschte.
+ * Umkategorisierungen durch den RulesApplier sowie Verteilungen und Aufteilungen durch den
+ * TransactionSplitter betreffen bestehende Zeilen, dafür gibt es reload().
+ */
+public class ColumnarLedger {
+    // Import-ID für Transaktionen ohne Import-Eintrag
+    private static final int NO_IMPORT = 0;
+    private static final String NO_GROUP = "OHNE_GRUPPE";
+    private static final int FETCH_SIZE = 5000;
+
+    private final AppDataContext context;
+
+    private final Map<String, Integer> categoryOrdinals = new HashMap<>();
+    private final List<String> categoryNames = new ArrayList<>();
+    private final Map<String, Integer> accountOrdinals = new HashMap<>();
+    private final List<String> accountNames = new ArrayList<>();
+    private Map<String, String> groupByCategory;
+
+    private final Set<Integer> loadedImports = new HashSet<>();
+    private volatile LedgerColumns columns;
+
+    public ColumnarLedger(AppDataContext context) {
+        this.context = context;
+        reload();
+    }
+
+    /**
+     * Aktueller Stand; unveränderlich, kann also parallel zu refresh() ausgewertet werden.
+     */
+    public LedgerColumns columns() {
+        return columns;
+    }
+
+    /**
+     * Lädt alles neu, inklusive Kategorien und Gruppenzuordnung.
+     */
+    public synchronized LedgerColumns reload() {
+        categoryOrdinals.clear();
+        categoryNames.clear();
+        accountOrdinals.clear();
+        accountNames.clear();
+        loadedImports.clear();
+
+        // Ordinalzahlen zuerst aus den Stammdaten, damit sie nicht von der Ladereihenfolge abhängen
+        context.getCategories().stream().map(Category::getId).sorted().forEach(this::categoryOrdinal);
+        context.getAccounts().stream().map(Account::getId).sorted().forEach(this::accountOrdinal);
+        groupByCategory = loadGroupByCategory(context.getDsl());
+
+        // Erst die Imports festhalten und nur deren Zeilen laden: ein währenddessen committeter
+        // Import fehlt dann ganz und wird beim nächsten refresh() angehängt, statt als geladen zu gelten
+        List<Integer> imports = context.getDsl().select(IMPORT_LOG.IMPORT_ID).from(IMPORT_LOG).fetch(IMPORT_LOG.IMPORT_ID);
+        Columns builder = new Columns(1024);
+        load(builder, IMPORT_ENTRY.IMPORT_ID.isNull().or(IMPORT_ENTRY.IMPORT_ID.in(imports)), true);
+        loadedImports.addAll(imports);
+        columns = snapshot(builder);
+        return columns;
+    }
+
+    /**
+     * Gleicht die geladenen Imports mit IMPORT_LOG ab: neue werden angehängt, gelöschte entfernt.
+     */
+    public synchronized LedgerColumns refresh() {
+        Set<Integer> current = new HashSet<>(context.getDsl()
+                .select(IMPORT_LOG.IMPORT_ID).from(IMPORT_LOG).fetch(IMPORT_LOG.IMPORT_ID));
+
+        Set<Integer> removed = new HashSet<>(loadedImports);
+        removed.removeAll(current);
+        Set<Integer> added = new HashSet<>(current);
+        added.removeAll(loadedImports);
+        if (removed.isEmpty() && added.isEmpty()) {
+            return columns;
+        }
+
+        LedgerColumns previous = columns;
+        Columns builder = new Columns(previous.size + 1024);
+        for (int i = 0; i < previous.size; i++) {
+            if (!removed.contains(previous.importId[i])) {
+                builder.add(previous.epochDay[i], previous.cents[i], previous.category[i], previous.account[i], previous.importId[i]);
+            }
+        }
+        if (!added.isEmpty()) {
+            load(builder, IMPORT_ENTRY.IMPORT_ID.in(added), false);
+        }
+
+        loadedImports.removeAll(removed);
+        loadedImports.addAll(added);
+        columns = snapshot(builder);
+        return columns;
+    }
+
+    /**
+     * Eine Zeile pro einmonatiger Transaktion, mehrmonatige mit einer Zeile pro Monatsanteil
+     * (am Monatsersten) aus TRANSACTION_ALLOCATION.
+     */
+    private void load(Columns builder, Condition condition, boolean includeWithoutImport) {
+        DSLContext dsl = context.getDsl();
+
+        var singleMonth = dsl.select(TRANSACTION.VALID_FROM, TRANSACTION.AMOUNT, TRANSACTION.CATEGORY_ID,
+                        PAYMENT.ACCOUNT_ID, IMPORT_ENTRY.IMPORT_ID)
+                .from(TRANSACTION)
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID));
+        var singleMonthJoined = includeWithoutImport
+                ? singleMonth.leftJoin(IMPORT_ENTRY).on(IMPORT_ENTRY.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                : singleMonth.join(IMPORT_ENTRY).on(IMPORT_ENTRY.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID));
+
+        try (Cursor<Record5<LocalDate, BigDecimal, String, String, Integer>> cursor = singleMonthJoined
+                .where(condition)
+                .and(TransactionAllocation.singleMonth())
+                .fetchSize(FETCH_SIZE)
+                .fetchLazy()) {
+            for (Record5<LocalDate, BigDecimal, String, String, Integer> record : cursor) {
+                builder.add((int) record.value1().toEpochDay(), toCents(record.value2()),
+                        categoryOrdinal(record.value3()), accountOrdinal(record.value4()), importOrdinal(record.value5()));
+            }
+        }
+
+        var allocated = dsl.select(TransactionAllocation.YEAR_MONTH, TransactionAllocation.AMOUNT, TRANSACTION.CATEGORY_ID,
+                        PAYMENT.ACCOUNT_ID, IMPORT_ENTRY.IMPORT_ID)
+                .from(TransactionAllocation.TRANSACTION_ALLOCATION)
+                .join(TRANSACTION).on(TRANSACTION.TRANSACTION_ID.eq(TransactionAllocation.TRANSACTION_ID))
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID));
+        var allocatedJoined = includeWithoutImport
+                ? allocated.leftJoin(IMPORT_ENTRY).on(IMPORT_ENTRY.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                : allocated.join(IMPORT_ENTRY).on(IMPORT_ENTRY.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID));
+
+        try (Cursor<Record5<Integer, BigDecimal, String, String, Integer>> cursor = allocatedJoined
+                .where(condition)
+                .fetchSize(FETCH_SIZE)
+                .fetchLazy()) {
+            for (Record5<Integer, BigDecimal, String, String, Integer> record : cursor) {
+                int yearMonth = record.value1();
+                builder.add((int) LocalDate.of(yearMonth / 100, yearMonth % 100, 1).toEpochDay(), toCents(record.value2()),
+                        categoryOrdinal(record.value3()), accountOrdinal(record.value4()), importOrdinal(record.value5()));
+            }
+        }
+    }
+
+    private static int importOrdinal(Integer importId) {
+        return importId == null ? NO_IMPORT : importId;
+    }
+
+    private LedgerColumns snapshot(Columns builder) {
+        List<String> groupNames = new ArrayList<>();
+        Map<String, Integer> groupOrdinals = new HashMap<>();
+        int[] groupOfCategory = new int[categoryNames.size()];
+        for (int c = 0; c < groupOfCategory.length; c++) {
+            String group = groupByCategory.getOrDefault(categoryNames.get(c), NO_GROUP);
+            groupOfCategory[c] = groupOrdinals.computeIfAbsent(group, g -> {
+                groupNames.add(g);
+                return groupNames.size() - 1;
+            });
+        }
+        return new LedgerColumns(builder.size,
+                Arrays.copyOf(builder.epochDay, builder.size), Arrays.copyOf(builder.cents, builder.size),
+                Arrays.copyOf(builder.category, builder.size), Arrays.copyOf(builder.account, builder.size),
+                Arrays.copyOf(builder.importId, builder.size),
+                List.copyOf(categoryNames), List.copyOf(accountNames), List.copyOf(groupNames), groupOfCategory);
+    }
+
+    private int categoryOrdinal(String categoryId) {
+        return categoryOrdinals.computeIfAbsent(categoryId, id -> {
+            categoryNames.add(id);
+            return categoryNames.size() - 1;
+        });
+    }
+
+    private int accountOrdinal(String accountId) {
+        return accountOrdinals.computeIfAbsent(accountId, id -> {
+            accountNames.add(id);
+            return accountNames.size() - 1;
+        });
+    }
+
+    /**
+     * Gruppe pro Kategorie über den Fremdschlüssel CATEGORY -> CATEGORY_GROUP aus dem generierten Modell.
+     */
+    static Map<String, String> loadGroupByCategory(DSLContext dsl) {
+        var references = CATEGORY.getReferencesTo(CATEGORY_GROUP);
+        if (references.isEmpty()) {
+            throw new IllegalStateException("CATEGORY hat keinen Fremdschlüssel auf CATEGORY_GROUP.");
+        }
+        Field<String> groupField = references.get(0).getFields().get(0).coerce(String.class);
+
+        Map<String, String> groupByCategory = new HashMap<>();
+        dsl.select(CATEGORY.ID, groupField)
+                .from(CATEGORY)
+                .where(groupField.isNotNull())
+                .forEach(record -> groupByCategory.put(record.value1(), record.value2()));
+        return groupByCategory;
+    }
+
+    static long toCents(BigDecimal amount) {
+        return amount.movePointRight(2).setScale(0, RoundingMode.HALF_EVEN).longValueExact();
+    }
+
+    /**
+     * Wachsende Spalten während des Ladens.
+     */
+    private static final class Columns {
+        int size;
+        int[] epochDay;
+        long[] cents;
+        int[] category;
+        int[] account;
+        int[] importId;
+
+        Columns(int capacity) {
+            epochDay = new int[capacity];
+            cents = new long[capacity];
+            category = new int[capacity];
+            account = new int[capacity];
+            importId = new int[capacity];
+        }
+
+        void add(int day, long amount, int categoryOrdinal, int accountOrdinal, int importOrdinal) {
+            if (size == epochDay.length) {
+                int capacity = Math.max(16, size * 2);
+                epochDay = Arrays.copyOf(epochDay, capacity);
+                cents = Arrays.copyOf(cents, capacity);
+                category = Arrays.copyOf(category, capacity);
+                account = Arrays.copyOf(account, capacity);
+                importId = Arrays.copyOf(importId, capacity);
+            }
+            epochDay[size] = day;
+            cents[size] = amount;
+            category[size] = categoryOrdinal;
+            account[size] = accountOrdinal;
+            importId[size] = importOrdinal;
+            size++;
+        }
+    }
+
+    public static void main(String[] args) {
+        Period period = args.length > 0 && args[0].equalsIgnoreCase("year") ? Period.YEAR : Period.MONTH;
+        Dimension dimension = args.length > 1 && args[1].equalsIgnoreCase("group") ? Dimension.CATEGORY_GROUP : Dimension.CATEGORY;
+
+        try (AppDataContext context = new AppDataContext()) {
+            long start = System.nanoTime();
+            ColumnarLedger ledger = new ColumnarLedger(context);
+            LedgerColumns columns = ledger.columns();
+            System.out.println(columns.size() + " Transaktionen geladen in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+
+            start = System.nanoTime();
+            PeriodTotals totals = columns.totals(period, dimension);
+            long micros = (System.nanoTime() - start) / 1_000;
+
+            StringBuilder header = new StringBuilder(String.format("%-10s", ""));
+            for (String key : totals.keys()) {
+                header.append(String.format(" %14s", key));
+            }
+            System.out.println(header);
+            for (int p = 0; p < totals.periodCount(); p++) {
+                StringBuilder line = new StringBuilder(String.format("%-10s", totals.label(p)));
+                for (int k = 0; k < totals.keys().size(); k++) {
+                    line.append(String.format(" %14.2f", totals.cents(p, k) / 100.0));
+                }
+                System.out.println(line);
+            }
+            System.out.println("Aggregation in " + micros + " µs.");
+        } catch (Exception e) {
+            System.err.println("Fehler beim Erstellen des Reports:");
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.kopolinfo.budget.report;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import ch.kopolinfo.budget.report.PeriodTotals.Period;
+
+/**
+ * Unveränderlicher Stand aller Transaktionen als Spalten primitiver Arrays: Datum als
+ * Epoch-Day, Betrag in Rappen, Kategorie und Account als Ordinalzahlen in die Namenslisten.
+ * Aggregationen laufen parallel über Zeilenbereiche, jeder mit eigenem long[]-Akkumulator.
+ */
+public final class LedgerColumns {
+    // Darunter lohnt sich die Aufteilung auf mehrere Threads nicht
+    private static final int MIN_SLICE = 16_384;
+
+    public enum Dimension { CATEGORY, CATEGORY_GROUP }
+
+    final int size;
+    final int[] epochDay;
+    final long[] cents;
+    final int[] category;
+    final int[] account;
+    final int[] importId;
+
+    final List<String> categoryNames;
+    final List<String> accountNames;
+    final List<String> groupNames;
+    // Gruppen-Ordinalzahl pro Kategorie-Ordinalzahl
+    final int[] groupOfCategory;
+
+    LedgerColumns(int size, int[] epochDay, long[] cents, int[] category, int[] account, int[] importId,
+            List<String> categoryNames, List<String> accountNames, List<String> groupNames, int[] groupOfCategory) {
+        this.size = size;
+        this.epochDay = epochDay;
+        this.cents = cents;
+        this.category = category;
+        this.account = account;
+        this.importId = importId;
+        this.categoryNames = categoryNames;
+        this.accountNames = accountNames;
+        this.groupNames = groupNames;
+        this.groupOfCategory = groupOfCategory;
+    }
+
+    public int size() { return size; }
+    public List<String> categoryNames() { return categoryNames; }
+    public List<String> accountNames() { return accountNames; }
+    public List<String> groupNames() { return groupNames; }
+
+    /**
+     * Summen über alle Accounts.
+     */
+    public PeriodTotals totals(Period period, Dimension dimension) {
+        return totals(period, dimension, null);
+    }
+
+    /**
+     * Summen pro Periode und Kategorie bzw. Kategoriegruppe.
+     * @param accountIds nur diese Accounts, null für alle
+     */
+    public PeriodTotals totals(Period period, Dimension dimension, List<String> accountIds) {
+        List<String> keys = dimension == Dimension.CATEGORY ? categoryNames : groupNames;
+        int[] keyOfCategory = dimension == Dimension.CATEGORY ? identity(categoryNames.size()) : groupOfCategory;
+
+        boolean[] accountMask = new boolean[accountNames.size()];
+        for (int a = 0; a < accountMask.length; a++) {
+            accountMask[a] = accountIds == null || accountIds.contains(accountNames.get(a));
+        }
+
+        if (size == 0) {
+            return new PeriodTotals(period, 0, 0, keys, new long[0]);
+        }
+
+        // Periode pro Tag einmal vorberechnen, die Zeilen brauchen dann nur noch einen Array-Zugriff
+        int minDay = Integer.MAX_VALUE;
+        int maxDay = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            minDay = Math.min(minDay, epochDay[i]);
+            maxDay = Math.max(maxDay, epochDay[i]);
+        }
+        int firstPeriod = period.key(LocalDate.ofEpochDay(minDay));
+        int periodCount = period.key(LocalDate.ofEpochDay(maxDay)) - firstPeriod + 1;
+        int[] periodOfDay = new int[maxDay - minDay + 1];
+        for (int day = minDay; day <= maxDay; day++) {
+            periodOfDay[day - minDay] = period.key(LocalDate.ofEpochDay(day)) - firstPeriod;
+        }
+
+        int keyCount = keys.size();
+        int dayOffset = minDay;
+        int slices = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, size / MIN_SLICE));
+        long[] sums = IntStream.range(0, slices)
+                .parallel()
+                .mapToObj(slice -> sumSlice(size * (long) slice / slices, size * (long) (slice + 1) / slices,
+                        periodOfDay, dayOffset, keyOfCategory, accountMask, periodCount, keyCount))
+                .reduce(LedgerColumns::add)
+                .orElseThrow();
+        return new PeriodTotals(period, firstPeriod, periodCount, keys, sums);
+    }
+
+    private long[] sumSlice(long from, long to, int[] periodOfDay, int dayOffset, int[] keyOfCategory,
+            boolean[] accountMask, int periodCount, int keyCount) {
+        long[] sums = new long[periodCount * keyCount];
+        for (int i = (int) from; i < to; i++) {
+            if (!accountMask[account[i]]) continue;
+            sums[periodOfDay[epochDay[i] - dayOffset] * keyCount + keyOfCategory[category[i]]] += cents[i];
+        }
+        return sums;
+    }
+
+    private static long[] add(long[] left, long[] right) {
+        for (int i = 0; i < left.length; i++) {
+            left[i] += right[i];
+        }
+        return left;
+    }
+
+    private static int[] identity(int size) {
+        int[] identity = new int[size];
+        for (int i = 0; i < size; i++) {
+            identity[i] = i;
+        }
+        return identity;
+    }
+}
@@ -0,0 +1,73 @@
+package ch.kopolinfo.budget.report;
+
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Ergebnis einer Aggregation: Summen in Rappen pro Periode und Schlüssel (Kategorie bzw.
+ * Kategoriegruppe), flach abgelegt als cents[periodIndex * keys + keyIndex].
+ */
+public final class PeriodTotals {
+
+    public enum Period {
+        MONTH, YEAR;
+
+        /**
+         * Fortlaufende Periodennummer: Jahr * 12 + Monat - 1 bzw. das Jahr.
+         */
+        public int key(LocalDate date) {
+            return this == MONTH ? date.getYear() * 12 + date.getMonthValue() - 1 : date.getYear();
+        }
+
+        public String label(int key) {
+            return this == MONTH ? String.format("%04d-%02d", key / 12, key % 12 + 1) : Integer.toString(key);
+        }
+    }
+
+    private final Period period;
+    private final int firstPeriod;
+    private final int periodCount;
+    private final List<String> keys;
+    private final long[] cents;
+
+    PeriodTotals(Period period, int firstPeriod, int periodCount, List<String> keys, long[] cents) {
+        this.period = period;
+        this.firstPeriod = firstPeriod;
+        this.periodCount = periodCount;
+        this.keys = keys;
+        this.cents = cents;
+    }
+
+    public Period period() { return period; }
+    public int periodCount() { return periodCount; }
+    public List<String> keys() { return keys; }
+
+    public String label(int periodIndex) {
+        return period.label(firstPeriod + periodIndex);
+    }
+
+    public long cents(int periodIndex, int keyIndex) {
+        return cents[periodIndex * keys.size() + keyIndex];
+    }
+
+    /**
+     * Summe für ein Datum innerhalb der Periode und einen Schlüssel, 0 ausserhalb der Daten.
+     */
+    public long cents(LocalDate date, String key) {
+        int periodIndex = period.key(date) - firstPeriod;
+        int keyIndex = keys.indexOf(key);
+        if (periodIndex < 0 || periodIndex >= periodCount || keyIndex < 0) return 0;
+        return cents(periodIndex, keyIndex);
+    }
+
+    /**
+     * Summe eines Schlüssels über alle Perioden.
+     */
+    public long total(int keyIndex) {
+        long sum = 0;
+        for (int p = 0; p < periodCount; p++) {
+            sum += cents(p, keyIndex);
+        }
+        return sum;
+    }
+}
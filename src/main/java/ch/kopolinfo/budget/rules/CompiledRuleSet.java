@@ -0,0 +1,13 @@
+package ch.kopolinfo.budget.rules;
+
+import java.util.List;
+
+/**
+ * Unveränderlicher Stand eines Regelwerks: die Definitionen in Auswertungsreihenfolge,
+ * der daraus kompilierte Regelbaum und ein Versionsstempel (Prüfsumme des Inhalts).
+ */
+public record CompiledRuleSet(
+	    String version,
+	    List<RuleDefinition> definitions,
+	    Rule rule
+	) {}
@@ -0,0 +1,155 @@
+package ch.kopolinfo.budget.rules;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick-Automat über eine feste Liste von Teilstrings. Ein Text wird in einem
+ * Durchgang gegen alle Muster geprüft; geliefert wird der kleinste Index eines
+ * enthaltenen Musters, d.h. frühere Muster haben Vorrang. allMatches liefert für die
+ * Auswertung der Regeln (siehe ProfilingRule) zusätzlich alle enthaltenen Muster.
+ *
+ * Nach dem Bau unveränderlich und damit thread-safe.
+ */
+public final class MultiPatternMatcher {
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    // Übergänge aller Zustände flach abgelegt, pro Zustand nach Zeichen sortiert
+    private final int[] edgeOffsets;
+    private final char[] edgeChars;
+    private final int[] edgeTargets;
+    private final int[] failure;
+    // Kleinster Musterindex, der in diesem Zustand (inkl. Suffixen) endet
+    private final int[] output;
+    // Alle Muster, die genau in diesem Zustand enden (null wenn keines), und der nächste
+    // Zustand entlang der Failure-Links, in dem wieder Muster enden (0 wenn keiner)
+    private final int[][] terminals;
+    private final int[] dictionaryLinks;
+
+    public MultiPatternMatcher(List<String> patterns) {
+        List<TreeMap<Character, Integer>> transitions = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        List<List<Integer>> endingPatterns = new ArrayList<>();
+        transitions.add(new TreeMap<>());
+        outputs.add(NO_MATCH);
+        endingPatterns.add(new ArrayList<>());
+
+        // 1. Trie aufbauen
+        for (int index = 0; index < patterns.size(); index++) {
+            String pattern = patterns.get(index);
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = transitions.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = transitions.size();
+                    transitions.add(new TreeMap<>());
+                    outputs.add(NO_MATCH);
+                    endingPatterns.add(new ArrayList<>());
+                    transitions.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            outputs.set(state, Math.min(outputs.get(state), index));
+            endingPatterns.get(state).add(index);
+        }
+
+        int stateCount = transitions.size();
+        failure = new int[stateCount];
+        output = outputs.stream().mapToInt(Integer::intValue).toArray();
+        terminals = new int[stateCount][];
+        for (int state = 0; state < stateCount; state++) {
+            List<Integer> ending = endingPatterns.get(state);
+            terminals[state] = ending.isEmpty() ? null : ending.stream().mapToInt(Integer::intValue).toArray();
+        }
+        dictionaryLinks = new int[stateCount];
+
+        // 2. Failure-Links per Breitensuche, Ausgaben entlang der Suffixe vererben
+        ArrayDeque<Integer> queue = new ArrayDeque<>(transitions.get(0).values());
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                int child = edge.getValue();
+                int fallback = failure[state];
+                while (fallback != 0 && !transitions.get(fallback).containsKey(edge.getKey())) {
+                    fallback = failure[fallback];
+                }
+                Integer target = transitions.get(fallback).get(edge.getKey());
+                failure[child] = (target != null && target != child) ? target : 0;
+                output[child] = Math.min(output[child], output[failure[child]]);
+                dictionaryLinks[child] = terminals[failure[child]] != null ? failure[child] : dictionaryLinks[failure[child]];
+                queue.add(child);
+            }
+        }
+
+        // 3. Übergänge in flache Arrays umkopieren
+        edgeOffsets = new int[stateCount + 1];
+        int edgeCount = transitions.stream().mapToInt(Map::size).sum();
+        edgeChars = new char[edgeCount];
+        edgeTargets = new int[edgeCount];
+        int offset = 0;
+        for (int state = 0; state < stateCount; state++) {
+            edgeOffsets[state] = offset;
+            for (Map.Entry<Character, Integer> edge : transitions.get(state).entrySet()) {
+                edgeChars[offset] = edge.getKey();
+                edgeTargets[offset] = edge.getValue();
+                offset++;
+            }
+        }
+        edgeOffsets[stateCount] = offset;
+    }
+
+    /**
+     * Index des ersten (in Listenreihenfolge) im Text enthaltenen Musters oder -1.
+     */
+    public int firstMatch(CharSequence text) {
+        int best = output[0];
+        int state = 0;
+        for (int i = 0; i < text.length() && best != 0; i++) {
+            state = step(state, text.charAt(i));
+            if (output[state] < best) best = output[state];
+        }
+        return best == NO_MATCH ? -1 : best;
+    }
+
+    /**
+     * Indizes aller im Text enthaltenen Muster, aufsteigend sortiert.
+     */
+    public int[] allMatches(CharSequence text) {
+        BitSet found = new BitSet();
+        if (terminals[0] != null) {
+            // Leere Muster sind in jedem Text enthalten
+            for (int index : terminals[0]) found.set(index);
+        }
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = step(state, text.charAt(i));
+            for (int s = terminals[state] != null ? state : dictionaryLinks[state]; s != 0; s = dictionaryLinks[s]) {
+                for (int index : terminals[s]) found.set(index);
+            }
+        }
+        return found.stream().toArray();
+    }
+
+    private int step(int state, char c) {
+        while (true) {
+            int next = transition(state, c);
+            if (next >= 0) return next;
+            if (state == 0) return 0;
+            state = failure[state];
+        }
+    }
+
+    private int transition(int state, char c) {
+        int from = edgeOffsets[state];
+        int to = edgeOffsets[state + 1];
+        if (from == to) return -1;
+        int found = Arrays.binarySearch(edgeChars, from, to, c);
+        return found >= 0 ? edgeTargets[found] : -1;
+    }
+}
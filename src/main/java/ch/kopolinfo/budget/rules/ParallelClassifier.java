@@ -0,0 +1,101 @@
+package ch.kopolinfo.budget.rules;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import ch.kopolinfo.budget.csvimport.RowBatch;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+
+/**
+ * Wertet ein Regelwerk für ganze Batches von Payments auf mehreren Kernen aus.
+ * Die Ergebnisse kommen immer in der Reihenfolge der Eingabe zurück, das Resultat
+ * ist damit identisch mit einer seriellen Auswertung.
+ */
+public class ParallelClassifier implements AutoCloseable {
+    // Kleinere Batches lohnen das Aufteilen nicht
+    private static final int MIN_PARALLEL_BATCH = 256;
+
+    private final Rule ruleSet;
+    private final ForkJoinPool pool;
+
+    public ParallelClassifier(Rule ruleSet) {
+        this(ruleSet, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism Anzahl Worker; 1 wertet synchron im aufrufenden Thread aus
+     */
+    public ParallelClassifier(Rule ruleSet, int parallelism) {
+        this.ruleSet = ruleSet;
+        this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    /**
+     * Startet die Auswertung im Hintergrund, damit der Aufrufer in der Zwischenzeit
+     * den vorherigen Batch in die DB schreiben kann.
+     */
+    public CompletableFuture<List<Optional<String>>> classifyAsync(List<Payment> payments) {
+        if (pool == null) {
+            return CompletableFuture.completedFuture(classifySerial(payments));
+        }
+        return CompletableFuture.supplyAsync(() -> payments.size() < MIN_PARALLEL_BATCH
+                ? classifySerial(payments)
+                : recorded(System.nanoTime(), payments.parallelStream().map(ruleSet::categoryFor).toList()), pool);
+    }
+
+    /**
+     * Wie classifyAsync(List), aber direkt auf dem RowBatch des Imports: pro Teilbereich
+     * ein eigener Flyweight, keine Payment-POJOs.
+     */
+    public CompletableFuture<List<Optional<String>>> classifyAsync(RowBatch rows, String accountId) {
+        if (pool == null) {
+            return CompletableFuture.completedFuture(classify(rows, accountId, 1));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            int parts = Math.max(1, Math.min(pool.getParallelism(), rows.size() / MIN_PARALLEL_BATCH));
+            return classify(rows, accountId, parts);
+        }, pool);
+    }
+
+    // Teilt den Batch in parts zusammenhängende Bereiche, die Ergebnisse bleiben an ihrer Position
+    private List<Optional<String>> classify(RowBatch rows, String accountId, int parts) {
+        long start = System.nanoTime();
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Optional<String>[] categories = new Optional[rows.size()];
+        IntStream range = IntStream.range(0, parts);
+        (parts > 1 ? range.parallel() : range).forEach(part -> {
+            RowBatch.Row row = rows.row(accountId);
+            int to = (int) ((long) rows.size() * (part + 1) / parts);
+            for (int i = (int) ((long) rows.size() * part / parts); i < to; i++) {
+                categories[i] = ruleSet.categoryFor(row.at(i));
+            }
+        });
+        return recorded(start, Arrays.asList(categories));
+    }
+
+    public List<Optional<String>> classify(List<Payment> payments) {
+        return classifyAsync(payments).join();
+    }
+
+    private List<Optional<String>> classifySerial(List<Payment> payments) {
+        return recorded(System.nanoTime(), payments.stream().map(ruleSet::categoryFor).toList());
+    }
+
+    // Dauer ab start und Treffer des Batches in PipelineMetrics erfassen
+    private static List<Optional<String>> recorded(long start, List<Optional<String>> categories) {
+        PipelineMetrics.global().recordClassification(System.nanoTime() - start, categories);
+        return categories;
+    }
+
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+}
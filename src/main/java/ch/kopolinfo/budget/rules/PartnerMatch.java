@@ -1,29 +1,41 @@
 package ch.kopolinfo.budget.rules;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
 
+/**
+ * Ordnet über Teilstrings der Beschreibung eine Kategorie zu. Passen mehrere Muster,
+ * gewinnt das in der Liste zuerst aufgeführte.
+ */
 public class PartnerMatch implements Rule {
-	Map<String, String> patternToCategory = Map.of(
-			"MIGROS KREUZPLATZ", "MIGROSKREUZ",
-			"Terzer", "TERZER",
-			"VEEN", "RESTERGON",
-			"ANDRES", "RESTERGON",
-			"SPUHLER", "RESTERGON",
-			"Bancomat Bezug", "CASH"
-			);
-			
+	private final List<String> patterns;
+	private final List<String> categories;
+	private final MultiPatternMatcher matcher;
+
+	public PartnerMatch(List<Map.Entry<String, String>> patternToCategory) {
+		this.patterns = patternToCategory.stream().map(Map.Entry::getKey).toList();
+		this.categories = patternToCategory.stream().map(Map.Entry::getValue).toList();
+		this.matcher = new MultiPatternMatcher(patterns);
+	}
 	
 	@Override
 	public Optional<String> categoryFor(Payment payment) {
-		return patternToCategory
-		.keySet()
-		.stream()
-		.filter(pattern -> payment.getDescription().contains(pattern))
-		.map(patternToCategory::get)
-		.findFirst();
+		int index = matcher.firstMatch(payment.getDescription());
+		return index < 0 ? Optional.empty() : Optional.of(categories.get(index));
+	}
+
+	@Override
+	public Optional<String> categoryFor(PaymentView payment) {
+		int index = matcher.firstMatch(payment.description());
+		return index < 0 ? Optional.empty() : Optional.of(categories.get(index));
 	}
 
+	// Für ProfilingRule
+	List<String> patterns() { return patterns; }
+	List<String> categories() { return categories; }
+	MultiPatternMatcher matcher() { return matcher; }
+
 }
@@ -0,0 +1,11 @@
+package ch.kopolinfo.budget.rules;
+
+/**
+ * Die Felder eines Payments, die Regeln auswerten, ohne Payment-POJO und ohne BigDecimal
+ * (siehe RowBatch.Row im Import-Pfad). Beträge in Rappen.
+ */
+public interface PaymentView {
+	String accountId();
+	long amountCents();
+	String description();
+}
@@ -0,0 +1,70 @@
+package ch.kopolinfo.budget.rules;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+
+/**
+ * Kompilierte Form einer RuleDefinition mit beliebig kombinierten Bedingungen.
+ * Unveränderlich und damit thread-safe.
+ */
+public class PredicateRule implements Rule {
+	private final RuleDefinition definition;
+	private final String categoryId;
+	private final String contains;
+	private final Pattern regex;
+	private final String accountId;
+	private final BigDecimal amountMin;
+	private final BigDecimal amountMax;
+	// Grenzen in Rappen für categoryFor(PaymentView), nach innen gerundet
+	private final long centsMin;
+	private final long centsMax;
+
+	public PredicateRule(RuleDefinition definition) {
+		this.definition = definition;
+		this.categoryId = definition.categoryId();
+		this.contains = definition.contains();
+		this.regex = definition.regex() == null ? null : Pattern.compile(definition.regex());
+		this.accountId = definition.accountId();
+		this.amountMin = definition.amountMin();
+		this.amountMax = definition.amountMax();
+		this.centsMin = amountMin == null ? Long.MIN_VALUE : cents(amountMin, RoundingMode.CEILING);
+		this.centsMax = amountMax == null ? Long.MAX_VALUE : cents(amountMax, RoundingMode.FLOOR);
+	}
+
+	@Override
+	public Optional<String> categoryFor(Payment payment) {
+		// Günstige Prüfungen zuerst, die Regex zuletzt
+		if (accountId != null && !accountId.equals(payment.getAccountId())) return Optional.empty();
+		if (amountMin != null && payment.getAmount().compareTo(amountMin) < 0) return Optional.empty();
+		if (amountMax != null && payment.getAmount().compareTo(amountMax) > 0) return Optional.empty();
+		if (contains != null && !payment.getDescription().contains(contains)) return Optional.empty();
+		if (regex != null && !regex.matcher(payment.getDescription()).find()) return Optional.empty();
+		return Optional.of(categoryId);
+	}
+
+	@Override
+	public Optional<String> categoryFor(PaymentView payment) {
+		if (accountId != null && !accountId.equals(payment.accountId())) return Optional.empty();
+		long amount = payment.amountCents();
+		if (amount < centsMin || amount > centsMax) return Optional.empty();
+		if (contains != null && !payment.description().contains(contains)) return Optional.empty();
+		if (regex != null && !regex.matcher(payment.description()).find()) return Optional.empty();
+		return Optional.of(categoryId);
+	}
+
+	private static long cents(BigDecimal amount, RoundingMode rounding) {
+		BigDecimal cents = amount.setScale(2, rounding).movePointRight(2);
+		// Grenzen ausserhalb des long-Bereichs schränken nichts ein
+		if (cents.compareTo(BigDecimal.valueOf(Long.MAX_VALUE)) > 0) return Long.MAX_VALUE;
+		if (cents.compareTo(BigDecimal.valueOf(Long.MIN_VALUE)) < 0) return Long.MIN_VALUE;
+		return cents.longValueExact();
+	}
+
+	RuleDefinition definition() {
+		return definition;
+	}
+}
@@ -0,0 +1,255 @@
+package ch.kopolinfo.budget.rules;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
+
+/**
+ * Decorator, der ein kompiliertes Regelwerk mit Zählern versieht: pro Regel bzw. pro Muster
+ * eines PartnerMatch die Anzahl Auswertungen, Treffer und die kumulierte Zeit, dazu wie oft
+ * ein Treffer gewonnen hat bzw. von einer früheren Regel oder einem früheren Muster überdeckt
+ * wurde. Das Ergebnis ist identisch mit dem des Regelwerks; damit überdeckte Treffer sichtbar
+ * werden, wertet eine RuleSequence hier aber alle Regeln aus statt beim ersten Treffer
+ * abzubrechen. Die gemessene Zeit ist die der normalen Auswertung jeder Regel.
+ *
+ * Die Zähler sind LongAdder, parallele Auswertung im ParallelClassifier bleibt ohne Contention.
+ * Eingeschaltet wird der Modus mit -Dbudget.rules.profile=true (siehe RuleFactory).
+ */
+public final class ProfilingRule implements Rule {
+	public static final String PROFILE_PROPERTY = "budget.rules.profile";
+
+	private static final AtomicReference<ProfilingRule> ACTIVE = new AtomicReference<>();
+
+	/**
+	 * Zähler einer Regel bzw. eines Musters. Muster werden nicht einzeln ausgewertet,
+	 * Auswertungen und Zeit stehen beim Automaten.
+	 */
+	public static final class Stats {
+		private final String label;
+		private final int depth;
+		private final LongAdder evaluations = new LongAdder();
+		private final LongAdder matches = new LongAdder();
+		private final LongAdder wins = new LongAdder();
+		private final LongAdder shadowed = new LongAdder();
+		private final LongAdder nanos = new LongAdder();
+
+		private Stats(String label, int depth) {
+			this.label = label;
+			this.depth = depth;
+		}
+
+		private void evaluated(long startNanos) {
+			nanos.add(System.nanoTime() - startNanos);
+			evaluations.increment();
+		}
+
+		private void matched(boolean decided) {
+			matches.increment();
+			if (decided) {
+				shadowed.increment();
+			} else {
+				wins.increment();
+			}
+		}
+
+		public String label() { return label; }
+		public int depth() { return depth; }
+		public long evaluations() { return evaluations.sum(); }
+		public long matches() { return matches.sum(); }
+		public long wins() { return wins.sum(); }
+		public long shadowed() { return shadowed.sum(); }
+		public long nanos() { return nanos.sum(); }
+	}
+
+	/**
+	 * @param <P> Payment oder PaymentView, je nachdem, welche categoryFor aufgerufen wurde
+	 */
+	private interface Node<P> {
+		/**
+		 * @param decided eine frühere Regel hat bereits getroffen, ein Treffer ist damit überdeckt
+		 */
+		Optional<String> evaluate(P payment, boolean decided);
+	}
+
+	/**
+	 * Zugriff auf die Zahlung in ihrer jeweiligen Form, damit die Knoten typisiert bleiben.
+	 */
+	private record Access<P>(BiFunction<Rule, P, Optional<String>> categoryFor, Function<P, String> description) {}
+
+	private static final Access<Payment> POJO = new Access<>(Rule::categoryFor, Payment::getDescription);
+	private static final Access<PaymentView> VIEW = new Access<>(Rule::categoryFor, PaymentView::description);
+
+	private interface StatsFactory {
+		Stats create(String label, int depth);
+	}
+
+	private final Rule delegate;
+	private final List<Stats> stats = new ArrayList<>();
+	private final Node<Payment> pojoRoot;
+	private final Node<PaymentView> viewRoot;
+
+	public ProfilingRule(Rule delegate) {
+		this.delegate = delegate;
+		this.pojoRoot = node(delegate, 0, POJO, this::add);
+		// Zweiter Baum in gleicher Reihenfolge, auf dieselben Zähler
+		Iterator<Stats> shared = List.copyOf(stats).iterator();
+		this.viewRoot = node(delegate, 0, VIEW, (label, depth) -> shared.next());
+	}
+
+	/**
+	 * Bei -Dbudget.rules.profile=true das instrumentierte Regelwerk, sonst das Regelwerk selbst.
+	 * Solange sich das Regelwerk nicht ändert, zählen alle Läufe auf dieselben Zähler.
+	 */
+	static Rule profileIfEnabled(Rule rule) {
+		if (!Boolean.getBoolean(PROFILE_PROPERTY)) return rule;
+		return ACTIVE.updateAndGet(active -> active != null && active.delegate == rule ? active : new ProfilingRule(rule));
+	}
+
+	/**
+	 * Gibt die Statistik des zuletzt instrumentierten Regelwerks aus; für das Ende der main-Methoden.
+	 */
+	public static void dumpIfEnabled() {
+		ProfilingRule active = ACTIVE.get();
+		if (active != null) {
+			active.dump(System.out);
+		}
+	}
+
+	@Override
+	public Optional<String> categoryFor(Payment payment) {
+		return pojoRoot.evaluate(payment, false);
+	}
+
+	@Override
+	public Optional<String> categoryFor(PaymentView payment) {
+		return viewRoot.evaluate(payment, false);
+	}
+
+	public Rule delegate() {
+		return delegate;
+	}
+
+	/**
+	 * Zähler in Auswertungsreihenfolge, Muster direkt nach ihrem Automaten.
+	 */
+	public List<Stats> stats() {
+		return Collections.unmodifiableList(stats);
+	}
+
+	private <P> Node<P> node(Rule rule, int depth, Access<P> access, StatsFactory factory) {
+		if (rule instanceof RuleSequence sequence) {
+			List<Node<P>> children = new ArrayList<>();
+			for (Rule child : sequence.rules()) {
+				children.add(node(child, depth, access, factory));
+			}
+			return (payment, decided) -> {
+				Optional<String> result = Optional.empty();
+				for (Node<P> child : children) {
+					Optional<String> category = child.evaluate(payment, decided || result.isPresent());
+					if (result.isEmpty()) result = category;
+				}
+				return result;
+			};
+		}
+		if (rule instanceof PartnerMatch partnerMatch) {
+			return partnerMatchNode(partnerMatch, depth, access, factory);
+		}
+
+		Stats ruleStats = factory.create(label(rule), depth);
+		return (payment, decided) -> {
+			long start = System.nanoTime();
+			Optional<String> category = access.categoryFor().apply(rule, payment);
+			ruleStats.evaluated(start);
+			if (category.isPresent()) ruleStats.matched(decided);
+			return category;
+		};
+	}
+
+	private <P> Node<P> partnerMatchNode(PartnerMatch partnerMatch, int depth, Access<P> access, StatsFactory factory) {
+		Stats group = factory.create("Teilstring-Automat (" + partnerMatch.patterns().size() + " Muster)", depth);
+		List<Stats> patternStats = new ArrayList<>();
+		for (int i = 0; i < partnerMatch.patterns().size(); i++) {
+			patternStats.add(factory.create("enthält '" + partnerMatch.patterns().get(i) + "' -> " + partnerMatch.categories().get(i), depth + 1));
+		}
+
+		return (payment, decided) -> {
+			// Zeit nur für die normale Auswertung, die Suche nach allen Mustern kommt danach
+			long start = System.nanoTime();
+			Optional<String> category = access.categoryFor().apply(partnerMatch, payment);
+			group.evaluated(start);
+			if (category.isEmpty()) return category;
+
+			group.matched(decided);
+			int[] matched = partnerMatch.matcher().allMatches(access.description().apply(payment));
+			for (int i = 0; i < matched.length; i++) {
+				patternStats.get(matched[i]).matched(decided || i > 0);
+			}
+			return category;
+		};
+	}
+
+	private Stats add(String label, int depth) {
+		Stats ruleStats = new Stats(label, depth);
+		stats.add(ruleStats);
+		return ruleStats;
+	}
+
+	private static String label(Rule rule) {
+		if (!(rule instanceof PredicateRule predicate)) {
+			return rule.getClass().getSimpleName();
+		}
+		RuleDefinition definition = predicate.definition();
+		StringBuilder label = new StringBuilder("P").append(definition.priority())
+				.append(" -> ").append(definition.categoryId()).append(':');
+		if (definition.contains() != null) label.append(" enthält '").append(definition.contains()).append('\'');
+		if (definition.regex() != null) label.append(" Regex '").append(definition.regex()).append('\'');
+		if (definition.accountId() != null) label.append(" Account ").append(definition.accountId());
+		if (definition.amountMin() != null || definition.amountMax() != null) {
+			label.append(" Betrag ")
+					.append(definition.amountMin() == null ? "" : definition.amountMin().toPlainString())
+					.append("..")
+					.append(definition.amountMax() == null ? "" : definition.amountMax().toPlainString());
+		}
+		return label.toString();
+	}
+
+	/**
+	 * Tabelle aller Regeln und Muster, dazu die Anzahl Kandidaten zum Entfernen
+	 * (nie getroffen oder immer überdeckt).
+	 */
+	public void dump(PrintStream out) {
+		out.println();
+		out.println(String.format("%-60s %12s %10s %10s %10s %10s %10s",
+				"Regel", "Auswertungen", "Treffer", "Gewonnen", "Überdeckt", "Zeit ms", "ns/Ausw."));
+
+		int neverMatched = 0;
+		int alwaysShadowed = 0;
+		for (Stats ruleStats : stats) {
+			String label = "  ".repeat(ruleStats.depth()) + ruleStats.label();
+			if (label.length() > 60) label = label.substring(0, 57) + "...";
+			long evaluations = ruleStats.evaluations();
+			out.println(String.format("%-60s %12s %10d %10d %10d %10s %10s",
+					label,
+					evaluations == 0 ? "-" : String.valueOf(evaluations),
+					ruleStats.matches(), ruleStats.wins(), ruleStats.shadowed(),
+					evaluations == 0 ? "-" : String.format("%.1f", ruleStats.nanos() / 1e6),
+					evaluations == 0 ? "-" : String.valueOf(ruleStats.nanos() / evaluations)));
+
+			if (ruleStats.matches() == 0) {
+				neverMatched++;
+			} else if (ruleStats.wins() == 0) {
+				alwaysShadowed++;
+			}
+		}
+		out.println(neverMatched + " Regeln/Muster ohne Treffer, " + alwaysShadowed + " nur überdeckt getroffen.");
+	}
+}
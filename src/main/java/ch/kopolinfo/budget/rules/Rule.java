@@ -1,9 +1,26 @@
 package ch.kopolinfo.budget.rules;
 
+import java.math.BigDecimal;
 import java.util.Optional;
 
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
 
+/**
+ * Ordnet einem Payment eine Kategorie zu. Regeln werden parallel ausgewertet
+ * (siehe ParallelClassifier) und müssen deshalb zustandslos bzw. unveränderlich sein.
+ */
 public interface Rule {
 	Optional<String> categoryFor(Payment payment);
+
+	/**
+	 * Auswertung ohne Payment-POJO für den Import-Pfad (RowBatch). Die mitgelieferten Regeln
+	 * überschreiben das; andere fallen auf ein temporäres Payment zurück.
+	 */
+	default Optional<String> categoryFor(PaymentView payment) {
+		Payment pojo = new Payment();
+		pojo.setAccountId(payment.accountId());
+		pojo.setAmount(BigDecimal.valueOf(payment.amountCents(), 2));
+		pojo.setDescription(payment.description());
+		return categoryFor(pojo);
+	}
 }
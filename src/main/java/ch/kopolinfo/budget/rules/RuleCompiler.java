@@ -0,0 +1,115 @@
+package ch.kopolinfo.budget.rules;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import ch.kopolinfo.budget.csvimport.CsvTokenizer;
+
+/**
+ * Liest Regel-Dateien und kompiliert sie in einen unveränderlichen Regelbaum.
+ *
+ * Format (Semikolon-getrennt, # leitet Kommentare ein):
+ * Priorität;Kategorie;Beschreibung enthält;Beschreibung Regex;Account;Betrag von;Betrag bis
+ */
+public final class RuleCompiler {
+
+	private RuleCompiler() {}
+
+	public static List<RuleDefinition> parse(List<String> lines, String source) {
+		CsvTokenizer tokenizer = new CsvTokenizer(';');
+		List<RuleDefinition> definitions = new ArrayList<>();
+
+		for (int i = 0; i < lines.size(); i++) {
+			String line = lines.get(i);
+			if (line.isBlank() || line.stripLeading().startsWith("#")) continue;
+
+			tokenizer.reset(line);
+			if (tokenizer.fieldCount() < 3) {
+				throw new IllegalArgumentException(source + ", Zeile " + (i + 1) + ": zu wenige Felder");
+			}
+			try {
+				definitions.add(new RuleDefinition(
+						tokenizer.isEmpty(0) ? 0 : Integer.parseInt(tokenizer.trimmedField(0)),
+						tokenizer.trimmedField(1),
+						optional(tokenizer, 2, false),
+						optional(tokenizer, 3, true),
+						optional(tokenizer, 4, true),
+						amount(tokenizer, 5),
+						amount(tokenizer, 6)));
+			} catch (RuntimeException e) {
+				throw new IllegalArgumentException(source + ", Zeile " + (i + 1) + ": " + e.getMessage(), e);
+			}
+		}
+		return definitions;
+	}
+
+	/**
+	 * Sortiert stabil nach Priorität (kleinere zuerst) und fasst aufeinanderfolgende reine
+	 * Teilstring-Regeln zu einem PartnerMatch-Automaten zusammen. Die Reihenfolge der
+	 * Auswertung bleibt dabei exakt erhalten.
+	 */
+	public static Rule compile(List<RuleDefinition> definitions) {
+		List<Rule> rules = new ArrayList<>();
+		List<Map.Entry<String, String>> containsRun = new ArrayList<>();
+
+		for (RuleDefinition definition : ordered(definitions)) {
+			if (definition.isPlainContains()) {
+				containsRun.add(Map.entry(definition.contains(), definition.categoryId()));
+				continue;
+			}
+			if (!containsRun.isEmpty()) {
+				rules.add(new PartnerMatch(List.copyOf(containsRun)));
+				containsRun.clear();
+			}
+			rules.add(new PredicateRule(definition));
+		}
+		if (!containsRun.isEmpty()) {
+			rules.add(new PartnerMatch(List.copyOf(containsRun)));
+		}
+
+		return rules.size() == 1 ? rules.get(0) : new RuleSequence(rules);
+	}
+
+	/**
+	 * Gegenstück zu parse: schreibt Definitionen im Datei-Format.
+	 */
+	public static List<String> format(List<RuleDefinition> definitions) {
+		List<String> lines = new ArrayList<>();
+		lines.add("# Priorität;Kategorie;Beschreibung enthält;Beschreibung Regex;Account;Betrag von;Betrag bis");
+		for (RuleDefinition definition : definitions) {
+			lines.add(String.join(";",
+					String.valueOf(definition.priority()),
+					quote(definition.categoryId()),
+					quote(definition.contains()),
+					quote(definition.regex()),
+					quote(definition.accountId()),
+					definition.amountMin() == null ? "" : definition.amountMin().toPlainString(),
+					definition.amountMax() == null ? "" : definition.amountMax().toPlainString()));
+		}
+		return lines;
+	}
+
+	public static List<RuleDefinition> ordered(List<RuleDefinition> definitions) {
+		return definitions.stream()
+				.sorted(Comparator.comparingInt(RuleDefinition::priority))
+				.toList();
+	}
+
+	private static String quote(String value) {
+		if (value == null) return "";
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String optional(CsvTokenizer tokenizer, int field, boolean trim) {
+		if (field >= tokenizer.fieldCount() || tokenizer.isEmpty(field)) return null;
+		return trim ? tokenizer.trimmedField(field) : tokenizer.field(field);
+	}
+
+	private static BigDecimal amount(CsvTokenizer tokenizer, int field) {
+		if (field >= tokenizer.fieldCount() || tokenizer.isEmpty(field)) return null;
+		return tokenizer.parseDecimal(field);
+	}
+}
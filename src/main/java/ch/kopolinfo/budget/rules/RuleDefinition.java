@@ -0,0 +1,25 @@
+package ch.kopolinfo.budget.rules;
+
+import java.math.BigDecimal;
+
+/**
+ * Eine Regel, wie sie in der Regel-Datei steht. Alle gesetzten Bedingungen müssen
+ * zutreffen; null bedeutet "keine Einschränkung".
+ */
+public record RuleDefinition(
+	    int priority,
+	    String categoryId,
+	    String contains,
+	    String regex,
+	    String accountId,
+	    BigDecimal amountMin,
+	    BigDecimal amountMax
+	) {
+
+	/**
+	 * Reine Teilstring-Regeln können gemeinsam in einen PartnerMatch-Automaten kompiliert werden.
+	 */
+	public boolean isPlainContains() {
+		return contains != null && regex == null && accountId == null && amountMin == null && amountMax == null;
+	}
+}
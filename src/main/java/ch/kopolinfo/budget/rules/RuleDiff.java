@@ -0,0 +1,64 @@
+package ch.kopolinfo.budget.rules;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unterschied zweier Regelwerk-Stände. Das Ergebnis eines Payments kann sich nur ändern,
+ * wenn eine geänderte (hinzugefügte oder entfernte) Regel in einem der beiden Stände
+ * auf das Payment passt, solange die übrigen Regeln ihre Reihenfolge behalten.
+ */
+public record RuleDiff(
+	    List<RuleDefinition> changed,
+	    boolean orderChanged
+	) {
+
+	public static RuleDiff between(List<RuleDefinition> before, List<RuleDefinition> after) {
+		Map<RuleDefinition, Integer> removed = counts(before);
+		Map<RuleDefinition, Integer> added = counts(after);
+		// Gemeinsame Definitionen (als Multimenge) herauskürzen
+		for (RuleDefinition definition : Set.copyOf(removed.keySet())) {
+			int common = Math.min(removed.get(definition), added.getOrDefault(definition, 0));
+			subtract(removed, definition, common);
+			subtract(added, definition, common);
+		}
+
+		Set<RuleDefinition> changed = new LinkedHashSet<>();
+		List<RuleDefinition> residualBefore = residual(before, removed, changed);
+		List<RuleDefinition> residualAfter = residual(after, added, changed);
+
+		return new RuleDiff(List.copyOf(changed), !residualBefore.equals(residualAfter));
+	}
+
+	public boolean isEmpty() {
+		return changed.isEmpty() && !orderChanged;
+	}
+
+	private static List<RuleDefinition> residual(List<RuleDefinition> definitions, Map<RuleDefinition, Integer> diff, Set<RuleDefinition> changed) {
+		Map<RuleDefinition, Integer> toSkip = new HashMap<>(diff);
+		List<RuleDefinition> residual = new ArrayList<>();
+		for (RuleDefinition definition : definitions) {
+			if (toSkip.getOrDefault(definition, 0) > 0) {
+				subtract(toSkip, definition, 1);
+				changed.add(definition);
+			} else {
+				residual.add(definition);
+			}
+		}
+		return residual;
+	}
+
+	private static Map<RuleDefinition, Integer> counts(List<RuleDefinition> definitions) {
+		Map<RuleDefinition, Integer> counts = new HashMap<>();
+		definitions.forEach(definition -> counts.merge(definition, 1, Integer::sum));
+		return counts;
+	}
+
+	private static void subtract(Map<RuleDefinition, Integer> counts, RuleDefinition definition, int amount) {
+		counts.computeIfPresent(definition, (d, count) -> count - amount > 0 ? count - amount : null);
+	}
+}
@@ -1,7 +1,11 @@
 package ch.kopolinfo.budget.rules;
 
 public class RuleFactory {
+	/**
+	 * Das aktuell gültige, kompilierte Regelwerk (siehe RuleStore), mit
+	 * -Dbudget.rules.profile=true instrumentiert (siehe ProfilingRule).
+	 */
 	public static Rule getRuleSet() {
-		return new PartnerMatch();
+		return ProfilingRule.profileIfEnabled(RuleStore.getDefault().current().rule());
 	}
 }
@@ -6,10 +6,11 @@ import java.util.Optional;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
 
 public class RuleSequence implements Rule {
-	final List<Rule> rules;
+	// Unveränderliche Kopie: die Sequenz ist damit thread-safe, sofern es die Regeln sind
+	private final List<Rule> rules;
 	
 	public RuleSequence(List<Rule> rules) {
-		this.rules = rules;
+		this.rules = List.copyOf(rules);
 	}
 	
 	@Override
@@ -19,4 +20,18 @@ public class RuleSequence implements Rule {
 	            .flatMap(Optional::stream)
 	            .findFirst();
 	}
+
+	@Override
+	public Optional<String> categoryFor(PaymentView payment) {
+		// Ohne Stream: pro Zeile des Import-Pfads keine zusätzlichen Objekte
+		for (Rule rule : rules) {
+			Optional<String> category = rule.categoryFor(payment);
+			if (category.isPresent()) return category;
+		}
+		return Optional.empty();
+	}
+
+	List<Rule> rules() {
+		return rules;
+	}
 }
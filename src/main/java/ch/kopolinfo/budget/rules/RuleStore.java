@@ -0,0 +1,161 @@
+package ch.kopolinfo.budget.rules;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+/**
+ * Hält das kompilierte Regelwerk im Speicher. Bei jedem Zugriff wird nur der
+ * Zeitstempel der Regel-Datei geprüft; hat sie sich geändert, wird sie neu gelesen,
+ * kompiliert und atomar ausgetauscht. Laufende Auswertungen behalten ihren Stand.
+ *
+ * Ohne Regel-Datei gilt das mitgelieferte Regelwerk aus dem Classpath.
+ */
+public class RuleStore {
+	public static final String RULES_FILE_PROPERTY = "budget.rules.file";
+	private static final String DEFAULT_RULES_FILE = "N:/Privat/Investitionen/Budget/rules.csv";
+	private static final String CLASSPATH_RULES = "/rules/default-rules.csv";
+
+	private static final RuleStore DEFAULT = new RuleStore(
+			Paths.get(System.getProperty(RULES_FILE_PROPERTY, DEFAULT_RULES_FILE)));
+
+	private record FileStamp(FileTime modified, long size) {}
+	private record Snapshot(FileStamp stamp, CompiledRuleSet ruleSet) {}
+
+	private final Path rulesFile;
+	private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+	public RuleStore(Path rulesFile) {
+		this.rulesFile = rulesFile;
+	}
+
+	public static RuleStore getDefault() {
+		return DEFAULT;
+	}
+
+	public Path getRulesFile() {
+		return rulesFile;
+	}
+
+	/**
+	 * Regelwerk, mit dem die bestehenden Zuordnungen zuletzt abgeglichen wurden,
+	 * oder null, wenn noch kein Abgleich stattgefunden hat.
+	 */
+	public CompiledRuleSet applied() {
+		Path appliedFile = appliedFile();
+		if (!Files.exists(appliedFile)) return null;
+		try {
+			byte[] content = Files.readAllBytes(appliedFile);
+			List<String> lines = new String(content, StandardCharsets.UTF_8).lines().toList();
+			List<RuleDefinition> definitions = RuleCompiler.parse(lines, appliedFile.toString());
+			return new CompiledRuleSet(version(content), definitions, RuleCompiler.compile(definitions));
+		} catch (IOException e) {
+			throw new UncheckedIOException("Abgeglichenes Regelwerk nicht lesbar: " + appliedFile, e);
+		}
+	}
+
+	/**
+	 * Merkt sich den Stand, auf den die Zuordnungen in der DB jetzt abgeglichen sind.
+	 */
+	public void markApplied(CompiledRuleSet ruleSet) {
+		Path appliedFile = appliedFile();
+		try {
+			Path tempFile = appliedFile.resolveSibling(appliedFile.getFileName() + ".tmp");
+			Files.write(tempFile, RuleCompiler.format(ruleSet.definitions()), StandardCharsets.UTF_8);
+			Files.move(tempFile, appliedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Abgeglichenes Regelwerk nicht schreibbar: " + appliedFile, e);
+		}
+	}
+
+	private Path appliedFile() {
+		return rulesFile.resolveSibling(rulesFile.getFileName() + ".applied");
+	}
+
+	/**
+	 * Aktuelles Regelwerk; wird nur neu kompiliert, wenn sich die Quelle geändert hat.
+	 */
+	public CompiledRuleSet current() {
+		Snapshot snapshot = current.get();
+		FileStamp stamp = stamp();
+		if (snapshot != null && Objects.equals(snapshot.stamp(), stamp)) {
+			return snapshot.ruleSet();
+		}
+
+		synchronized (this) {
+			snapshot = current.get();
+			if (snapshot != null && Objects.equals(snapshot.stamp(), stamp)) {
+				return snapshot.ruleSet();
+			}
+			try {
+				CompiledRuleSet ruleSet = load(stamp != null);
+				current.set(new Snapshot(stamp, ruleSet));
+				if (snapshot != null) {
+					System.out.println("Regelwerk neu geladen, Version " + ruleSet.version());
+				}
+				return ruleSet;
+			} catch (RuntimeException e) {
+				// Eine fehlerhafte Änderung darf einen laufenden Prozess nicht stoppen
+				if (snapshot == null) throw e;
+				System.err.println("Regel-Datei fehlerhaft, Version " + snapshot.ruleSet().version() + " bleibt aktiv: " + e.getMessage());
+				return snapshot.ruleSet();
+			}
+		}
+	}
+
+	private CompiledRuleSet load(boolean fromFile) {
+		byte[] content = fromFile ? readFile() : readClasspath();
+		String source = fromFile ? rulesFile.toString() : "classpath:" + CLASSPATH_RULES;
+
+		List<String> lines = new String(content, StandardCharsets.UTF_8).lines().toList();
+		List<RuleDefinition> definitions = RuleCompiler.parse(lines, source);
+
+		return new CompiledRuleSet(version(content), RuleCompiler.ordered(definitions), RuleCompiler.compile(definitions));
+	}
+
+	private FileStamp stamp() {
+		try {
+			BasicFileAttributes attributes = Files.readAttributes(rulesFile, BasicFileAttributes.class);
+			return new FileStamp(attributes.lastModifiedTime(), attributes.size());
+		} catch (IOException e) {
+			// Keine Regel-Datei: Classpath-Regelwerk
+			return null;
+		}
+	}
+
+	private byte[] readFile() {
+		try {
+			return Files.readAllBytes(rulesFile);
+		} catch (IOException e) {
+			throw new UncheckedIOException("Regel-Datei nicht lesbar: " + rulesFile, e);
+		}
+	}
+
+	private static byte[] readClasspath() {
+		try (InputStream in = RuleStore.class.getResourceAsStream(CLASSPATH_RULES)) {
+			if (in == null) {
+				throw new IllegalStateException("Regelwerk nicht im Classpath gefunden: " + CLASSPATH_RULES);
+			}
+			return in.readAllBytes();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static String version(byte[] content) {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		return String.format("%08x", crc.getValue());
+	}
+}
@@ -3,65 +3,365 @@ package ch.kopolinfo.budget.rules;
 import static ch.kopolinfo.budget.model.jooq.Tables.PAYMENT;
 import static ch.kopolinfo.budget.model.jooq.Tables.TRANSACTION;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
+import org.jooq.Condition;
+import org.jooq.Cursor;
 import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Record;
+import org.jooq.impl.DSL;
 
 import ch.kopolinfo.budget.db.AppDataContext;
+import ch.kopolinfo.budget.db.DescriptionIndex;
+import ch.kopolinfo.budget.db.MonthlyAggregate;
+import ch.kopolinfo.budget.metrics.PipelineMetrics;
+import ch.kopolinfo.budget.metrics.PipelineMetrics.Stage;
 import ch.kopolinfo.budget.model.jooq.tables.pojos.Payment;
 import ch.kopolinfo.budget.model.jooq.tables.records.TransactionRecord;
 
 public class RulesApplier {
+    // Anzahl geprüfter Transaktionen pro Chunk/Commit; <= 1 schaltet auf den Einzel-Update-Pfad zurück
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
 
-    public static void main(String[] args) {
-        System.setProperty("org.jooq.no-logo", "true");
+    private final AppDataContext context;
+    private final int chunkSize;
+    private final PipelineMetrics metrics = PipelineMetrics.global();
 
-        try (AppDataContext context = new AppDataContext()) {
-            DSLContext dsl = context.getDsl();
-            Rule ruleSet = RuleFactory.getRuleSet();
-            String unassignedId = context.getUnassignedCategory().getId();
-
-            System.out.println("Suche nach unkategorisierten Transaktionen...");
-
-            // 1. Hole alle TransactionRecords, die UNASSIGNED sind
-            // Wir joinen das Payment, damit wir die Daten für die Rule-Engine haben
-            List<TransactionRecord> unassignedTransactions = dsl.select(TRANSACTION.fields())
-                    .from(TRANSACTION)
-                    .where(TRANSACTION.CATEGORY_ID.eq(unassignedId))
-                    .fetchInto(TRANSACTION);
-
-            if (unassignedTransactions.isEmpty()) {
-                System.out.println("Keine unkategorisierten Transaktionen gefunden.");
-                return;
+    public RulesApplier(AppDataContext context) {
+        this(context, DEFAULT_CHUNK_SIZE);
+    }
+
+    public RulesApplier(AppDataContext context, int chunkSize) {
+        this.context = context;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Wendet das aktuelle Regelwerk auf alle UNASSIGNED-Transaktionen an.
+     * @return Anzahl neu kategorisierter Transaktionen
+     */
+    public int applyRules() {
+        Rule ruleSet = RuleFactory.getRuleSet();
+        String unassignedId = context.getUnassignedCategory().getId();
+
+        System.out.println("Suche nach unkategorisierten Transaktionen...");
+
+        return chunkSize > 1
+                ? applyBulk(ruleSet, unassignedId)
+                : applyRowByRow(ruleSet, unassignedId);
+    }
+
+    /**
+     * Gleicht die Zuordnungen nach einer Regeländerung ab. Betrachtet werden nur Payments,
+     * auf die eine geänderte Regel im alten oder neuen Stand passen kann. Eine Transaktion
+     * gilt als von den Regeln verwaltet, wenn sie UNASSIGNED ist oder die Kategorie trägt,
+     * die der alte Stand liefert; manuell umgebuchte Transaktionen bleiben unberührt.
+     * Das Ergebnis ist identisch mit reapplyAll() ab demselben abgeglichenen Stand: ausserhalb
+     * der betroffenen Payments liefern alter und neuer Stand dieselbe Kategorie, dort ändert
+     * auch der vollständige Abgleich nichts. Voraussetzung ist, dass keine UNASSIGNED-Transaktion
+     * liegt, die der alte Stand schon zuordnen würde (Imports klassifizieren mit dem aktuellen
+     * Stand); sonst einmal reapplyAll() laufen lassen.
+     * @return Anzahl geänderter Transaktionen
+     */
+    public int applyIncremental() {
+        RuleStore store = RuleStore.getDefault();
+        CompiledRuleSet current = store.current();
+        CompiledRuleSet applied = store.applied();
+
+        if (applied == null) {
+            System.out.println("Kein abgeglichener Regelstand vorhanden, prüfe alle unkategorisierten Transaktionen.");
+            int updateCount = applyRules();
+            store.markApplied(current);
+            return updateCount;
+        }
+
+        RuleDiff diff = RuleDiff.between(applied.definitions(), current.definitions());
+        if (diff.isEmpty()) {
+            System.out.println("Regelwerk unverändert (Version " + current.version() + ").");
+            return 0;
+        }
+
+        // Bei reiner Umsortierung kann jedes Payment betroffen sein
+        DescriptionIndex.catchUp(context.getDsl());
+        Condition affected = diff.orderChanged()
+                ? DSL.trueCondition()
+                : diff.changed().stream().map(this::affectedBy).reduce(DSL.falseCondition(), Condition::or);
+
+        System.out.println(diff.changed().size() + " geänderte Regeln, suche betroffene Transaktionen...");
+        int updateCount = reevaluate(affected, applied.rule(), ProfilingRule.profileIfEnabled(current.rule()),
+                context.getUnassignedCategory().getId());
+        store.markApplied(current);
+        return updateCount;
+    }
+
+    /**
+     * Vollständiger Neuabgleich aller Transaktionen mit derselben Definition wie
+     * applyIncremental(): von den Regeln verwaltete Transaktionen (UNASSIGNED oder Kategorie
+     * des zuletzt abgeglichenen Stands) erhalten die Kategorie des aktuellen Stands. Ohne
+     * abgeglichenen Stand gilt der aktuelle als alter Stand. Liest alle Transaktionen; dient
+     * als Referenz für applyIncremental() und nach Eingriffen ausserhalb des RuleStore.
+     * @return Anzahl geänderter Transaktionen
+     */
+    public int reapplyAll() {
+        RuleStore store = RuleStore.getDefault();
+        CompiledRuleSet current = store.current();
+        CompiledRuleSet applied = store.applied();
+
+        System.out.println("Prüfe alle Transaktionen gegen Regelwerk Version " + current.version() + "...");
+        int updateCount = reevaluate(DSL.trueCondition(), (applied != null ? applied : current).rule(),
+                ProfilingRule.profileIfEnabled(current.rule()), context.getUnassignedCategory().getId());
+        store.markApplied(current);
+        return updateCount;
+    }
+
+    /**
+     * Payments, auf die eine Regel überhaupt passen kann. Regeln ohne Teilstring, Account
+     * und Betrag (nur Regex) lassen sich nicht eingrenzen.
+     */
+    private Condition affectedBy(RuleDefinition definition) {
+        Condition condition = DSL.trueCondition();
+        if (definition.contains() != null) {
+            condition = condition.and(DescriptionIndex.containing(definition.contains()));
+        }
+        if (definition.accountId() != null) {
+            condition = condition.and(PAYMENT.ACCOUNT_ID.eq(definition.accountId()));
+        }
+        if (definition.amountMin() != null) {
+            condition = condition.and(PAYMENT.AMOUNT.ge(definition.amountMin()));
+        }
+        if (definition.amountMax() != null) {
+            condition = condition.and(PAYMENT.AMOUNT.le(definition.amountMax()));
+        }
+        return condition;
+    }
+
+    private int reevaluate(Condition affected, Rule before, Rule after, String unassignedId) {
+        List<Integer> transactionIds = new ArrayList<>();
+        List<Optional<String>> categories = new ArrayList<>();
+        int scanned = 0;
+        int updateCount = 0;
+
+        try (Cursor<Record> cursor = context.getDsl().select(reevaluationFields())
+                .from(TRANSACTION)
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                .where(affected)
+                .orderBy(TRANSACTION.TRANSACTION_ID)
+                .fetchSize(Math.max(chunkSize, 1))
+                .fetchLazy()) {
+
+            for (Record record : cursor) {
+                scanned++;
+                Payment payment = record.into(PAYMENT).into(Payment.class);
+                String currentCategory = record.get(TRANSACTION.CATEGORY_ID);
+                String oldCategory = before.categoryFor(payment).orElse(unassignedId);
+                String newCategory = after.categoryFor(payment).orElse(unassignedId);
+
+                boolean ruleOwned = currentCategory.equals(unassignedId) || currentCategory.equals(oldCategory);
+                if (ruleOwned && !currentCategory.equals(newCategory)) {
+                    transactionIds.add(record.get(TRANSACTION.TRANSACTION_ID));
+                    categories.add(Optional.of(newCategory));
+                }
+
+                if (transactionIds.size() >= Math.max(chunkSize, 1)) {
+                    updateCount += flush(transactionIds, categories);
+                    transactionIds.clear();
+                    categories.clear();
+                }
+            }
+        }
+        updateCount += flush(transactionIds, categories);
+
+        System.out.println(scanned + " betroffene Transaktionen geprüft, " + updateCount + " neu kategorisiert.");
+        return updateCount;
+    }
+
+    private static List<Field<?>> reevaluationFields() {
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(TRANSACTION.TRANSACTION_ID);
+        fields.add(TRANSACTION.CATEGORY_ID);
+        fields.addAll(Arrays.asList(PAYMENT.fields()));
+        return fields;
+    }
+
+    /**
+     * Bulk-Pfad: TRANSACTION und PAYMENT werden gejoint über einen Cursor gestreamt,
+     * chunkweise parallel klassifiziert und pro Zielkategorie mit
+     * UPDATE ... WHERE TRANSACTION_ID IN (...) geschrieben. Während ein Chunk
+     * klassifiziert wird, schreibt dieser Thread den vorherigen.
+     */
+    private int applyBulk(Rule ruleSet, String unassignedId) {
+        DSLContext dsl = context.getDsl();
+
+        List<Field<?>> fields = new ArrayList<>();
+        fields.add(TRANSACTION.TRANSACTION_ID);
+        fields.addAll(Arrays.asList(PAYMENT.fields()));
+
+        List<Integer> transactionIds = new ArrayList<>(chunkSize);
+        List<Payment> payments = new ArrayList<>(chunkSize);
+        List<Integer> previousIds = null;
+        CompletableFuture<List<Optional<String>>> previousCategories = null;
+        int scanned = 0;
+        int updateCount = 0;
+
+        try (ParallelClassifier classifier = new ParallelClassifier(ruleSet);
+             Cursor<Record> cursor = dsl.select(fields)
+                .from(TRANSACTION)
+                .join(PAYMENT).on(PAYMENT.PAYMENT_ID.eq(TRANSACTION.PAYMENT_ID))
+                .where(TRANSACTION.CATEGORY_ID.eq(unassignedId))
+                .orderBy(TRANSACTION.TRANSACTION_ID)
+                .fetchSize(chunkSize)
+                .fetchLazy()) {
+
+            for (Record record : cursor) {
+                scanned++;
+                transactionIds.add(record.get(TRANSACTION.TRANSACTION_ID));
+                payments.add(record.into(PAYMENT).into(Payment.class));
+
+                if (payments.size() >= chunkSize) {
+                    CompletableFuture<List<Optional<String>>> categories = classifier.classifyAsync(payments);
+                    if (previousIds != null) {
+                        updateCount += flush(previousIds, previousCategories.join());
+                    }
+                    previousIds = transactionIds;
+                    previousCategories = categories;
+                    transactionIds = new ArrayList<>(chunkSize);
+                    payments = new ArrayList<>(chunkSize);
+                }
+            }
+
+            if (previousIds != null) {
+                updateCount += flush(previousIds, previousCategories.join());
+            }
+            if (!payments.isEmpty()) {
+                updateCount += flush(transactionIds, classifier.classify(payments));
             }
+        }
+
+        if (scanned == 0) {
+            System.out.println("Keine unkategorisierten Transaktionen gefunden.");
+        } else {
+            System.out.println(scanned + " Transaktionen geprüft.");
+            System.out.println("Update abgeschlossen: " + updateCount + " Transaktionen neu kategorisiert.");
+        }
+        return updateCount;
+    }
+
+    /**
+     * Schreibt die Treffer eines Chunks in einer eigenen Transaktion, ein UPDATE pro Kategorie.
+     * Das Monatsaggregat wird davor um die alten und danach um die neuen Kategorien korrigiert.
+     */
+    private int flush(List<Integer> transactionIds, List<Optional<String>> categories) {
+        Map<String, List<Integer>> pending = new LinkedHashMap<>();
+        for (int i = 0; i < transactionIds.size(); i++) {
+            Integer transactionId = transactionIds.get(i);
+            categories.get(i).ifPresent(category ->
+                    pending.computeIfAbsent(category, c -> new ArrayList<>()).add(transactionId));
+        }
+        if (pending.isEmpty()) return 0;
 
-            System.out.println(unassignedTransactions.size() + " Transaktionen gefunden. Wende Regeln an...");
-
-            dsl.transaction(configuration -> {
-                int updateCount = 0;
-                for (TransactionRecord trans : unassignedTransactions) {
-                    
-                    // 2. Passendes Payment laden, um es der Rule Engine zu übergeben
-                    Payment payment = dsl.selectFrom(PAYMENT)
-                            .where(PAYMENT.PAYMENT_ID.eq(trans.getPaymentId()))
-                            .fetchOneInto(Payment.class);
-
-                    if (payment != null) {
-                        // 3. Regeln prüfen
-                        Optional<String> newCategory = ruleSet.categoryFor(payment);
-                        
-                        if (newCategory.isPresent()) {
-                            // 4. Update durchführen, falls eine Regel matcht
-                            trans.setCategoryId(newCategory.get());
-                            trans.store(); // Speichert die Änderung in der DB
-                            updateCount++;
-                        }
+        long start = System.nanoTime();
+        int updated = context.getDsl().transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            Condition changed = pending.values().stream()
+                    .map(TRANSACTION.TRANSACTION_ID::in)
+                    .reduce(DSL.falseCondition(), Condition::or);
+            MonthlyAggregate.subtract(txDsl, changed);
+
+            int count = 0;
+            for (Map.Entry<String, List<Integer>> entry : pending.entrySet()) {
+                count += txDsl.update(TRANSACTION)
+                        .set(TRANSACTION.CATEGORY_ID, entry.getKey())
+                        .where(TRANSACTION.TRANSACTION_ID.in(entry.getValue()))
+                        .execute();
+            }
+
+            MonthlyAggregate.add(txDsl, changed);
+            return count;
+        });
+        metrics.record(Stage.UPDATE, System.nanoTime() - start, updated);
+        return updated;
+    }
+
+    /**
+     * Einzel-Update-Pfad: ein SELECT pro Payment und ein store() pro Treffer.
+     */
+    private int applyRowByRow(Rule ruleSet, String unassignedId) {
+        DSLContext dsl = context.getDsl();
+
+        // 1. Hole alle TransactionRecords, die UNASSIGNED sind
+        List<TransactionRecord> unassignedTransactions = dsl.select(TRANSACTION.fields())
+                .from(TRANSACTION)
+                .where(TRANSACTION.CATEGORY_ID.eq(unassignedId))
+                .fetchInto(TRANSACTION);
+
+        if (unassignedTransactions.isEmpty()) {
+            System.out.println("Keine unkategorisierten Transaktionen gefunden.");
+            return 0;
+        }
+
+        System.out.println(unassignedTransactions.size() + " Transaktionen gefunden. Wende Regeln an...");
+
+        return dsl.transactionResult(configuration -> {
+            DSLContext txDsl = DSL.using(configuration);
+            int updateCount = 0;
+            for (TransactionRecord trans : unassignedTransactions) {
+
+                // 2. Passendes Payment laden, um es der Rule Engine zu übergeben
+                Payment payment = txDsl.selectFrom(PAYMENT)
+                        .where(PAYMENT.PAYMENT_ID.eq(trans.getPaymentId()))
+                        .fetchOneInto(Payment.class);
+
+                if (payment != null) {
+                    // 3. Regeln prüfen
+                    long start = System.nanoTime();
+                    Optional<String> newCategory = ruleSet.categoryFor(payment);
+                    metrics.recordClassification(System.nanoTime() - start, List.of(newCategory));
+
+                    if (newCategory.isPresent()) {
+                        // 4. Update durchführen, falls eine Regel matcht
+                        // (über txDsl, damit Update und Aggregat in derselben Transaktion laufen)
+                        start = System.nanoTime();
+                        Condition thisTransaction = TRANSACTION.TRANSACTION_ID.eq(trans.getTransactionId());
+                        MonthlyAggregate.subtract(txDsl, thisTransaction);
+                        trans.setCategoryId(newCategory.get());
+                        txDsl.executeUpdate(trans); // Speichert die Änderung in der DB
+                        MonthlyAggregate.add(txDsl, thisTransaction);
+                        metrics.record(Stage.UPDATE, System.nanoTime() - start, 1);
+                        updateCount++;
                     }
                 }
-                System.out.println("Update abgeschlossen: " + updateCount + " Transaktionen neu kategorisiert.");
-            });
+            }
+            System.out.println("Update abgeschlossen: " + updateCount + " Transaktionen neu kategorisiert.");
+            return updateCount;
+        });
+    }
 
+    public static void main(String[] args) {
+        System.setProperty("org.jooq.no-logo", "true");
+
+        try (AppDataContext context = new AppDataContext()) {
+            // Usage: RulesApplier [incremental|full] [chunk_size]
+            String mode = args.length > 0 && (args[0].equals("incremental") || args[0].equals("full")) ? args[0] : null;
+            int argIndex = mode != null ? 1 : 0;
+            int chunkSize = args.length > argIndex ? Integer.parseInt(args[argIndex]) : DEFAULT_CHUNK_SIZE;
+
+            RulesApplier applier = new RulesApplier(context, chunkSize);
+            if ("incremental".equals(mode)) {
+                applier.applyIncremental();
+            } else if ("full".equals(mode)) {
+                applier.reapplyAll();
+            } else {
+                applier.applyRules();
+            }
+            PipelineMetrics.writeReportIfRequested();
+            ProfilingRule.dumpIfEnabled();
         } catch (Exception e) {
             System.err.println("Fehler beim Anwenden der Regeln:");
             e.printStackTrace();
@@ -0,0 +1,62 @@
+-- Schema der Budget App (H2), wie es CSVImporter, RulesApplier & Co. verwenden.
+-- Grundlage für die jOOQ-Generierung ohne Produktions-DB (Profil schema-codegen)
+-- und für In-Memory-Datenbanken in den Benchmarks.
+-- Die Seitentabellen (PAYMENT_TOKEN, PAYMENT_HASH, ...) legt AppDataContext selbst an.
+
+CREATE TABLE IF NOT EXISTS CURRENCY (
+    CURRENCY_CODE VARCHAR(3) NOT NULL PRIMARY KEY,
+    NAME VARCHAR(64)
+);
+
+CREATE TABLE IF NOT EXISTS ACCOUNT (
+    ID VARCHAR(64) NOT NULL PRIMARY KEY,
+    NAME VARCHAR(128),
+    CURRENCY_CODE VARCHAR(3) REFERENCES CURRENCY (CURRENCY_CODE)
+);
+
+CREATE TABLE IF NOT EXISTS CATEGORY_GROUP (
+    ID VARCHAR(64) NOT NULL PRIMARY KEY,
+    NAME VARCHAR(128)
+);
+
+CREATE TABLE IF NOT EXISTS CATEGORY (
+    ID VARCHAR(64) NOT NULL PRIMARY KEY,
+    NAME VARCHAR(128),
+    GROUP_ID VARCHAR(64) REFERENCES CATEGORY_GROUP (ID)
+);
+
+CREATE TABLE IF NOT EXISTS IMPORT_LOG (
+    IMPORT_ID INT AUTO_INCREMENT PRIMARY KEY,
+    ACCOUNT_ID VARCHAR(64) NOT NULL REFERENCES ACCOUNT (ID),
+    IMPORT_DATE TIMESTAMP NOT NULL,
+    FILE_NAME VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS PAYMENT (
+    PAYMENT_ID INT AUTO_INCREMENT PRIMARY KEY,
+    ACCOUNT_ID VARCHAR(64) NOT NULL REFERENCES ACCOUNT (ID),
+    BOOKING_DATE DATE NOT NULL,
+    AMOUNT DECIMAL(15, 2) NOT NULL,
+    DESCRIPTION VARCHAR(1000),
+    RAW_CSV_LINE VARCHAR(4000)
+);
+CREATE INDEX IF NOT EXISTS PAYMENT_ACCOUNT_DATE_IDX ON PAYMENT (ACCOUNT_ID, BOOKING_DATE);
+
+CREATE TABLE IF NOT EXISTS TRANSACTION (
+    TRANSACTION_ID INT AUTO_INCREMENT PRIMARY KEY,
+    PAYMENT_ID INT NOT NULL REFERENCES PAYMENT (PAYMENT_ID),
+    CATEGORY_ID VARCHAR(64) NOT NULL REFERENCES CATEGORY (ID),
+    AMOUNT DECIMAL(15, 2) NOT NULL,
+    VALID_FROM DATE,
+    VALID_TO DATE,
+    DESCRIPTION VARCHAR(1000)
+);
+CREATE INDEX IF NOT EXISTS TRANSACTION_CATEGORY_IDX ON TRANSACTION (CATEGORY_ID);
+
+-- Verknüpfung Import -> Payment; verschwindet mit dem Import-Log bzw. dem Payment
+CREATE TABLE IF NOT EXISTS IMPORT_ENTRY (
+    IMPORT_ID INT NOT NULL REFERENCES IMPORT_LOG (IMPORT_ID) ON DELETE CASCADE,
+    PAYMENT_ID INT NOT NULL REFERENCES PAYMENT (PAYMENT_ID) ON DELETE CASCADE,
+    PRIMARY KEY (IMPORT_ID, PAYMENT_ID)
+);
+CREATE INDEX IF NOT EXISTS IMPORT_ENTRY_PAYMENT_IDX ON IMPORT_ENTRY (PAYMENT_ID);